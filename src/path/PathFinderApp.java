@@ -30,13 +30,19 @@ public class PathFinderApp {
 	
 
 
-	public static void main(String[] args) {
-
+	/**
+	 * Builds the demonstration level (a container of obstacle zones).  Shared by the GUI and
+	 * the headless batch runner.
+	 * 
+	 * @return a new copy of the demonstration level
+	 */
+	public static Level defaultLevel() {
+		
 		/*
 		 * First we build up the level (a container of obstacle zones.  Our agent is not
 		 * allowed in these zones.
 		 */
-		Level theLevel = Level.builder().size(DEFAULT_FRAME_WIDTH, DEFAULT_FRAME_HEIGHT)
+		return Level.builder().size(DEFAULT_FRAME_WIDTH, DEFAULT_FRAME_HEIGHT)
 				
 				.addZone(new Rectangle(0,0,20,300))
 				.addZone(new Rectangle(300,0,20,100))
@@ -65,6 +71,13 @@ public class PathFinderApp {
 				.addZone(new Rectangle(600,750,200,50))
 				.addZone(new Rectangle(800,650,30,150))
 				.build();
+	}
+	
+	
+
+	public static void main(String[] args) {
+
+		Level theLevel = defaultLevel();
 		
 		
 		/*
@@ -2,11 +2,59 @@ package path.agent;
 
 
 /**
- * An enumeration of the discrete 4 connected actions we will use when considering permissible
- * next states.  In this case, we can move North, South, East, or West.
+ * An enumeration of the discrete actions we will use when considering permissible next states.
+ * The first four (North, South, East, West) are the 4 connected actions; the diagonals complete
+ * the 8 connected set.
+ * <p>
+ * Each action knows the direction it moves in, one grid cell at a time (y grows southward).
  */
 public enum Action {
 	
-	N, S, E, W, NW, SE, NE, SW; 
+	N(0, -1), S(0, 1), E(1, 0), W(-1, 0), NW(-1, -1), SE(1, 1), NE(1, -1), SW(-1, 1); 
+
+	private static final Action[] VALUES = values();   // values() copies the array on every call
+
+	private final int dx;
+	private final int dy;
+	
+	private Action(int dx, int dy) {
+		this.dx = dx;
+		this.dy = dy;
+	}
+	
+	/**
+	 * @return the action with the given ordinal
+	 */
+	public static Action of(int ordinal) {
+		return VALUES[ordinal];
+	}
+	
+	/**
+	 * @return the column change (-1, 0 or 1) made by this action
+	 */
+	public int dx() {
+		return dx;
+	}
+	
+	/**
+	 * @return the row change (-1, 0 or 1) made by this action
+	 */
+	public int dy() {
+		return dy;
+	}
+	
+	/**
+	 * @return the action undoing this one (N for S, SW for NE and so on)
+	 */
+	public Action opposite() {
+		return VALUES[ordinal() ^ 1];   // the constants are declared in opposite pairs
+	}
+	
+	/**
+	 * @return true for NW, SE, NE and SW
+	 */
+	public boolean isDiagonal() {
+		return dx != 0 && dy != 0;
+	}
 
 }
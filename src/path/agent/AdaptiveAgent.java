@@ -0,0 +1,417 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * A meta-agent choosing a strategy per query from cheap features of the query:
+ * <ul>
+ * <li>the straight line, as the ghost agent walks it, when the start can see the goal (see
+ * Neighbors.line);</li>
+ * <li>breadth first search for tiny distances;</li>
+ * <li>A* for medium ones;</li>
+ * <li>multi-resolution (hierarchical) search for long ones.</li>
+ * </ul>
+ * The distance is counted in grid steps and stretched by the share of blocked cells in the
+ * box spanned by the start and goal, since a cluttered box makes for a longer search.  Queries
+ * whose start and goal lie in different connected regions of the grid are answered at once,
+ * without a search.
+ * <p>
+ * The two distance thresholds are learned.  Every few queries near a threshold are given to
+ * the strategy on the other side of it, and the expansions of every query (from the SearchStats
+ * of the agent it went to) are recorded by strategy and distance band.  Each refit moves a
+ * threshold to where the recorded expansions say the cheaper strategy changes.  Expansions,
+ * unlike times, do not depend on the machine or on what else it is doing.
+ * <p>
+ * The search tree and stats of a query are those of the agent it was handed to.  The straight
+ * line and A* return shortest paths; breadth first search returns paths of the fewest steps,
+ * which with diagonal moves on are not always the cheapest, and the hierarchical search may
+ * return longer ones.
+ * <p>
+ * The features are kept up to date across level edits without starting over.  The tiles of the
+ * new grid that are not shared with the old one (see Grid.sharesTile) hold every changed cell;
+ * only the blocked counts below and right of those cells are summed again, and only the
+ * connected regions touching them are labeled again.  On an open level most cells lie in one
+ * region, so an edit there may still relabel most of the grid.  A new grid of another shape, or
+ * a change of connectivity, rebuilds everything: time and memory in proportion to the grid.
+ */
+public class AdaptiveAgent extends PathAgent {
+
+	/**
+	 * The strategies the agent chooses between.
+	 */
+	public enum Strategy { NONE, LINE, BFS, ASTAR, HIERARCHICAL }
+
+	private static final int BANDS = 16;            // distance bands: 0, 1, 2-3, 4-7, 8-15, ...
+
+	private static final int MIN_SAMPLES = 8;       // queries per band and strategy before it counts
+
+	private static final int REFIT_INTERVAL = 64;   // queries between refits
+
+	private static final int EXPLORE_EVERY = 4;     // one in this many queries near a threshold explores
+
+	private static final double DENSITY_WEIGHT = 2.0;   // how much clutter stretches the distance
+
+	private int tinyDistance = 6;      // below this many steps use BFS
+
+	private int longDistance = 48;     // from this many steps on use the hierarchical search
+
+	private boolean learning = true;
+
+	private final long[][] expansions = new long[Strategy.values().length][BANDS];
+
+	private final int[][] samples = new int[Strategy.values().length][BANDS];
+
+	private int queries;
+
+	private final PathAgent bfs;
+	private final PathAgent astar;
+	private final PathAgent hierarchical;
+
+	private Grid grid;
+
+	private boolean componentsAllDirection;
+
+	private int[] component;    // connected region of each open cell, -1 for blocked cells
+
+	private int[] blocked;      // summed area table of blocked cells, (cols + 1) by (rows + 1)
+
+	private int labels;         // connected region labels handed out so far
+
+	private int[] queue;        // flood fill scratch, one entry per cell
+
+	private Strategy lastStrategy = Strategy.NONE;
+
+	private int lastDistance;
+
+	private double lastDensity;
+
+
+	public AdaptiveAgent(Level lvl) {
+		super(lvl);
+		bfs = new BreadthFirstSearch(lvl);
+		astar = new AstarAgent(lvl);
+		hierarchical = new MultiResolutionAgent(lvl);
+	}
+
+
+	/**
+	 * Picks a strategy from the features of the query and hands the query to it.
+	 */
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		path = null;
+		lastStrategy = Strategy.NONE;
+		prepare();
+
+		int from = grid.cellOf(start);
+		int to = grid.cellOf(goal);
+		if (!onGrid(from, start) || !onGrid(to, goal)) {
+			// off the way point grid the features mean nothing; A* copes with any point
+			lastStrategy = Strategy.ASTAR;
+			return handOff(astar);
+		}
+
+		if (!grid.isOpen(from) || !grid.isOpen(to) || component[from] != component[to]) {
+			beginCellSearch(start.x, start.y);
+			endSearch();
+			return null;
+		}
+
+		int[] line = Neighbors.line(grid, from, to, allDirection);
+		if (line != null) {
+			lastStrategy = Strategy.LINE;
+			int index = beginCellSearch(start.x, start.y);
+			for (int i = 1; i < line.length; i++) {
+				index = cellReached(grid.x(line[i]), grid.y(line[i]), i, index);
+			}
+			endSearch();
+			path = PathResult.ofCells(grid, line);
+			return this.getPath();
+		}
+
+		int dx = Math.abs(grid.col(from) - grid.col(to));
+		int dy = Math.abs(grid.row(from) - grid.row(to));
+		int steps = allDirection ? Math.max(dx, dy) : dx + dy;
+		lastDensity = density(Math.min(grid.col(from), grid.col(to)), Math.min(grid.row(from), grid.row(to)),
+				Math.max(grid.col(from), grid.col(to)), Math.max(grid.row(from), grid.row(to)));
+		lastDistance = (int) Math.round(steps * (1.0 + DENSITY_WEIGHT * lastDensity));
+
+		lastStrategy = choose(lastDistance);
+		PathAgent chosen = lastStrategy == Strategy.BFS ? bfs : lastStrategy == Strategy.ASTAR ? astar : hierarchical;
+
+		handOff(chosen);
+		record(lastStrategy, lastDistance, stats.expansions());
+
+		return this.getPath();
+	}
+
+
+	/**
+	 * The strategy for a (stretched) distance.  When learning, one in EXPLORE_EVERY queries
+	 * within a factor of two of a threshold goes to the strategy across it.
+	 */
+	private Strategy choose(int distance) {
+		Strategy s = distance < tinyDistance ? Strategy.BFS : distance < longDistance ? Strategy.ASTAR : Strategy.HIERARCHICAL;
+		if (!learning || queries % EXPLORE_EVERY != 0) return s;
+
+		if (distance >= tinyDistance / 2 && distance < 2 * tinyDistance) {
+			return s == Strategy.BFS ? Strategy.ASTAR : Strategy.BFS;
+		}
+		if (distance >= longDistance / 2 && distance < 2 * longDistance) {
+			return s == Strategy.HIERARCHICAL ? Strategy.ASTAR : Strategy.HIERARCHICAL;
+		}
+		return s;
+	}
+
+
+	/*  --------------------------- LEARNING --------------------------------- */
+
+	private void record(Strategy s, int distance, int expanded) {
+		int b = band(distance);
+		expansions[s.ordinal()][b] += expanded;
+		samples[s.ordinal()][b]++;
+
+		if (learning && ++queries % REFIT_INTERVAL == 0) refit();
+	}
+
+
+	/**
+	 * Moves both thresholds to where the recorded expansions change sides, then halves the record so
+	 * later queries weigh as much as all earlier ones.
+	 */
+	private void refit() {
+		tinyDistance = fit(Strategy.BFS, Strategy.ASTAR, tinyDistance);
+		longDistance = Math.max(tinyDistance + 1, fit(Strategy.ASTAR, Strategy.HIERARCHICAL, longDistance));
+
+		for (int s = 0; s < expansions.length; s++) {
+			for (int b = 0; b < BANDS; b++) {
+				expansions[s][b] /= 2;
+				samples[s][b] /= 2;
+			}
+		}
+	}
+
+
+	/**
+	 * @param near the strategy used below the threshold
+	 * @param far the strategy used from the threshold on
+	 * @return the start of the first band in which far expanded fewer cells, else the end of the
+	 * last band in which near did, else the old threshold
+	 */
+	private int fit(Strategy near, Strategy far, int threshold) {
+		int nearWins = -1;
+		for (int b = 0; b < BANDS; b++) {
+			double xNear = mean(near, b);
+			double xFar = mean(far, b);
+			if (Double.isNaN(xNear) || Double.isNaN(xFar)) continue;
+
+			if (xFar < xNear) return Math.max(1, b == 0 ? 0 : 1 << (b - 1));
+			nearWins = 1 << b;
+		}
+		return nearWins > 0 ? Math.max(threshold, nearWins) : threshold;
+	}
+
+
+	private double mean(Strategy s, int band) {
+		int n = samples[s.ordinal()][band];
+		return n < MIN_SAMPLES ? Double.NaN : (double) expansions[s.ordinal()][band] / n;
+	}
+
+
+	/**
+	 * @return 0 for distance 0, otherwise b for distances from 2^(b-1) to 2^b - 1
+	 */
+	private static int band(int distance) {
+		return Math.min(BANDS - 1, 32 - Integer.numberOfLeadingZeros(distance));
+	}
+
+
+	/*  --------------------------- FEATURES --------------------------------- */
+
+	/**
+	 * Labels the connected regions of the grid and counts its blocked cells, again whenever the
+	 * level's grid or the connectivity changes; after an edit of the level only the part the
+	 * edit changed.
+	 */
+	private void prepare() {
+		Grid current = level.grid();
+		if (current == grid && componentsAllDirection == allDirection) return;
+
+		Grid previous = grid;
+		grid = current;
+		if (previous != null && componentsAllDirection == allDirection && previous.stride() == current.stride()
+				&& previous.cols() == current.cols() && previous.rows() == current.rows()) {
+			update(previous);
+			return;
+		}
+
+		componentsAllDirection = allDirection;
+		blocked = new int[(grid.cols() + 1) * (grid.rows() + 1)];
+		sumBlocked(0, 0);
+
+		component = new int[grid.size()];
+		queue = new int[grid.size()];
+		Arrays.fill(component, -1);
+		labels = 0;
+		for (int seed = 0; seed < grid.size(); seed++) {
+			if (component[seed] < 0 && grid.isOpen(seed)) label(seed, labels++);
+		}
+	}
+
+
+	/**
+	 * Brings the features of the previous grid up to date for the current one, an edited
+	 * version of it.  Cells of shared tiles are unchanged; the cells of the other tiles are
+	 * compared one by one.
+	 */
+	private void update(Grid previous) {
+		int cols = grid.cols();
+		int c0 = cols, r0 = grid.rows(), c1 = -1, r1 = -1;
+		for (int t = 0; t < grid.tileCount(); t++) {
+			if (grid.sharesTile(previous, t)) continue;
+
+			int end = Math.min(grid.size(), (t + 1) * Grid.TILE_ROWS * cols);
+			for (int c = t * Grid.TILE_ROWS * cols; c < end; c++) {
+				if (grid.isOpen(c) == previous.isOpen(c) && grid.moves(c) == previous.moves(c)) continue;
+				c0 = Math.min(c0, grid.col(c));
+				c1 = Math.max(c1, grid.col(c));
+				r0 = Math.min(r0, grid.row(c));
+				r1 = Math.max(r1, grid.row(c));
+			}
+		}
+		if (c1 < 0) return;   // the edit changed nothing at this stride
+
+		sumBlocked(c0, r0);
+
+		// every region that changed touches a changed cell (both ends of a changed move are
+		// changed cells), so relabeling from them covers all of them; fresh labels keep apart
+		// the untouched regions, which keep theirs
+		int fresh = labels;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = grid.cell(c, r);
+				if (!grid.isOpen(cell)) component[cell] = -1;
+				else if (component[cell] < fresh) label(cell, labels++);
+			}
+		}
+	}
+
+
+	/**
+	 * Fills in the summed area table from column c0 and row r0 on, the part that depends on the
+	 * cells at or below and right of (c0, r0).
+	 */
+	private void sumBlocked(int c0, int r0) {
+		int cols = grid.cols(), w = cols + 1;
+		for (int r = r0; r < grid.rows(); r++) {
+			for (int c = c0; c < cols; c++) {
+				int here = grid.isOpen(grid.cell(c, r)) ? 0 : 1;
+				blocked[(r + 1) * w + c + 1] = here + blocked[r * w + c + 1] + blocked[(r + 1) * w + c] - blocked[r * w + c];
+			}
+		}
+	}
+
+
+	/**
+	 * Gives the label to every open cell reachable from the seed.
+	 */
+	private void label(int seed, int label) {
+		int head = 0, tail = 0;
+		queue[tail++] = seed;
+		component[seed] = label;
+		while (head < tail) {
+			int c = queue[head++];
+			for (int m = Neighbors.moves(grid, c, allDirection); m != 0; m &= m - 1) {
+				int n = grid.neighbor(c, Integer.numberOfTrailingZeros(m));
+				if (component[n] != label) {
+					component[n] = label;
+					queue[tail++] = n;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return the share of blocked cells in the box of columns c0 to c1 and rows r0 to r1
+	 */
+	private double density(int c0, int r0, int c1, int r1) {
+		int w = grid.cols() + 1;
+		int count = blocked[(r1 + 1) * w + c1 + 1] - blocked[r0 * w + c1 + 1] - blocked[(r1 + 1) * w + c0] + blocked[r0 * w + c0];
+		return (double) count / ((c1 - c0 + 1) * (r1 - r0 + 1));
+	}
+
+
+	private boolean onGrid(int cell, Point p) {
+		return cell >= 0 && grid.x(cell) == p.x && grid.y(cell) == p.y;
+	}
+
+
+	/*  --------------------------- GETTERS --------------------------------- */
+
+	/**
+	 * @return the strategy chosen for the last query, NONE if it was answered without a search
+	 */
+	public Strategy getLastStrategy() {
+		return lastStrategy;
+	}
+
+	/**
+	 * @return the last query's distance in grid steps, stretched by its clutter
+	 */
+	public int getLastDistance() {
+		return lastDistance;
+	}
+
+	/**
+	 * @return the share of blocked cells between the last query's start and goal
+	 */
+	public double getLastDensity() {
+		return lastDensity;
+	}
+
+	public int getTinyDistance() {
+		return tinyDistance;
+	}
+
+	public int getLongDistance() {
+		return longDistance;
+	}
+
+	/**
+	 * Sets both thresholds, in grid steps; learning moves them from there.
+	 */
+	public void setThresholds(int tinyDistance, int longDistance) {
+		if (tinyDistance < 0 || longDistance <= tinyDistance) throw new IllegalArgumentException("need 0 <= tiny < long");
+		this.tinyDistance = tinyDistance;
+		this.longDistance = longDistance;
+	}
+
+	public boolean isLearning() {
+		return learning;
+	}
+
+	/**
+	 * Turns learning (exploration and refits) on or off; off, the choice depends on the query alone.
+	 */
+	public void setLearning(boolean learning) {
+		this.learning = learning;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Adaptive Agent";
+	}
+
+}
@@ -0,0 +1,70 @@
+package path.agent;
+
+import java.util.Arrays;
+import java.util.List;
+
+import path.level.Level;
+
+
+/**
+ * Creates agents by a short name, for front ends that choose the agent from text (command line
+ * options, service requests) rather than from the GUI's combo box.
+ */
+public class Agents {
+	
+	private static final List<String> NAMES = Arrays.asList("ghost", "bfs", "astar", "weighted", "arastar", "greedy", "dijkstra", "flowfield", "realtime", "multires", "subgoal", "ch", "adaptive");
+
+	private Agents() {
+	}
+
+
+	/**
+	 * @return the names understood by create
+	 */
+	public static List<String> names() {
+		return NAMES;
+	}
+
+
+	/**
+	 * Creates a new agent for the level.
+	 * 
+	 * @param name one of names() (case insensitive)
+	 * @param lvl the level the agent plans in
+	 * @return a new agent
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public static PathAgent create(String name, Level lvl) {
+		switch (name.toLowerCase()) {
+			case "ghost":
+				return new GhostAgent(lvl);
+			case "bfs":
+				return new BreadthFirstSearch(lvl);
+			case "astar":
+				return new AstarAgent(lvl);
+			case "weighted":
+				return new WeightedAstarAgent(lvl);
+			case "arastar":
+				return new AraStarAgent(lvl);
+			case "greedy":
+				return new GreedyBestFirstAgent(lvl);
+			case "dijkstra":
+				return new DijkstraAgent(lvl);
+			case "flowfield":
+				return new FlowFieldAgent(lvl);
+			case "realtime":
+				return new RealTimeAgent(lvl);
+			case "multires":
+				return new MultiResolutionAgent(lvl);
+			case "subgoal":
+				return new SubgoalAgent(lvl);
+			case "ch":
+				return new ContractionAgent(lvl);
+			case "adaptive":
+				return new AdaptiveAgent(lvl);
+			default:
+				throw new IllegalArgumentException("unknown agent '" + name + "', expected one of " + NAMES);
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import path.level.Level;
+
+
+/**
+ * Anytime Repairing A* (ARA*).  A weighted A* search with a large epsilon finds a first path
+ * quickly; then epsilon is lowered step by step and each search reuses the work of the previous
+ * one, only re-expanding the nodes whose cost improved.  Every finished round yields a path and
+ * a bound on how far it can be from optimal.
+ * <p>
+ * The search is cut off at a hard time limit and returns the best path found by then (null if
+ * even the first round did not finish).  After planning, getBound() tells how close to optimal
+ * the returned path is guaranteed to be; 1 means optimal.
+ * <p>
+ * The open list orders nodes by the key of AstarAgent.openKey: the inflated f with the agent's
+ * TieBreaking folded in, so ties are broken as configured (see setTieBreaking).  Nodes are
+ * estimated with the heuristic chosen by AstarAgent.
+ */
+public class AraStarAgent extends WeightedAstarAgent {
+
+	private double initialEpsilon;    // epsilon of the first round
+
+	private double epsilonStep;       // how much epsilon drops between rounds
+
+	private long timeLimitNanos;      // hard limit on one call to findPath
+
+	private double bound = Double.POSITIVE_INFINITY;   // suboptimality bound of the current path
+
+	private int rounds;               // rounds that finished during the last search
+
+	/*
+	 * Search state shared by the rounds of one search.
+	 */
+	private PriorityQueue<Node> open;
+	private Map<Point, Node> best;    // the cheapest node found for each state
+	private Set<Point> closed;        // states expanded in the current round
+	private List<Node> incons;        // improved after being expanded this round; reopened next round
+	private Node goalNode;
+	private long deadline;
+
+
+	/**
+	 * Starts at epsilon 3, lowers it by 0.5 per round and stops after 2 ms.
+	 */
+	public AraStarAgent(Level lvl) {
+		this(lvl, 3.0, 0.5, 2000);
+	}
+
+	/**
+	 * @param lvl the level
+	 * @param initialEpsilon the heuristic inflation of the first round
+	 * @param epsilonStep how much the inflation drops after each round
+	 * @param timeLimitMicros the hard time limit of each query
+	 */
+	public AraStarAgent(Level lvl, double initialEpsilon, double epsilonStep, long timeLimitMicros) {
+		super(lvl, initialEpsilon);
+		this.initialEpsilon = initialEpsilon;
+		this.epsilonStep = epsilonStep;
+		setTimeLimitMicros(timeLimitMicros);
+	}
+
+
+	/**
+	 * Runs rounds of decreasing epsilon until the path is optimal or time runs out.
+	 */
+	@Override
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		deadline = System.nanoTime() + timeLimitNanos;
+		prepareHeuristic();
+		epsilon = initialEpsilon;
+		bound = Double.POSITIVE_INFINITY;
+		rounds = 0;
+		path = null;
+		pushes = 0;
+
+		open = new PriorityQueue<>(Comparator.comparingLong(Node::getKey));
+		best = new HashMap<>();
+		closed = new HashSet<>();
+		incons = new ArrayList<>();
+
+		Node startNode = new Node(start, null, null);
+		startNode.setFval(getHeuristic(startNode));
+		startNode.setKey(openKey(startNode));
+		beginSearch(startNode);
+		best.put(start, startNode);
+		open.add(startNode);
+		goalNode = start.equals(goal) ? startNode : null;
+
+		while (improvePath()) {
+			if (goalNode == null) break;    // nothing left to expand and no path
+
+			path = pathFromNode(goalNode);
+			rounds++;
+			bound = Math.min(epsilon, provenBound());
+
+			if (epsilon <= 1.0) break;
+			epsilon = Math.max(1.0, epsilon - epsilonStep);
+			reopen();
+		}
+
+		endSearch();
+		return this.getPath();
+	}
+
+
+	/**
+	 * One round of weighted A*.  Stops when no open node can lead to a cheaper goal under the
+	 * current epsilon.
+	 *
+	 * @return true if the round finished, false if the deadline passed first
+	 */
+	private boolean improvePath() {
+		int count = 0;
+
+		while (!open.isEmpty()) {
+			Node s = open.peek();
+			if (goalNode != null && goalNode.getCost() <= s.getFval()) return true;
+
+			if ((++count & 63) == 0 && System.nanoTime() > deadline) return false;
+
+			open.poll();
+			if (best.get(s.getState()) != s) continue;   // superseded by a cheaper node
+
+			closed.add(s.getState());
+			nodeExpanded(s);
+
+			for (int m = clearMoves(s.getState()); m != 0; m &= m - 1) {
+				Action action = Action.of(Integer.numberOfTrailingZeros(m));
+				Point np = Neighbors.step(level, s.getState(), action.ordinal());
+
+				Node old = best.get(np);
+				if (old != null && old.getCost() <= s.getCost() + s.getState().distance(np)) continue;
+
+				Node next = new Node(np, s, action);
+				best.put(np, next);
+				nodeReached(s, next);
+				if (np.equals(goal)) goalNode = next;
+
+				if (closed.contains(np)) {
+					incons.add(next);
+				}
+				else {
+					next.setFval(next.getCost() + getHeuristic(next));
+					next.setKey(openKey(next));
+					open.add(next);
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Prepares the next round: the inconsistent nodes join the open list, every open node
+	 * is re-keyed with the new epsilon and nothing counts as expanded any more.
+	 */
+	private void reopen() {
+		List<Node> waiting = new ArrayList<>(open.size() + incons.size());
+		waiting.addAll(open);
+		waiting.addAll(incons);
+		open.clear();
+		incons.clear();
+		closed.clear();
+
+		for (Node n : waiting) {
+			if (best.get(n.getState()) != n) continue;
+			n.setFval(n.getCost() + getHeuristic(n));
+			n.setKey(openKey(n));
+			open.add(n);
+		}
+	}
+
+
+	/**
+	 * The cost of the current path divided by a lower bound on the optimal cost (the smallest
+	 * un-inflated g + h among the nodes still open or inconsistent).
+	 */
+	private double provenBound() {
+		double lower = goalNode.getCost();
+		for (Node n : open) lower = Math.min(lower, unweightedF(n));
+		for (Node n : incons) lower = Math.min(lower, unweightedF(n));
+		return lower > 0 ? goalNode.getCost() / lower : 1.0;
+	}
+
+	private double unweightedF(Node n) {
+		if (best.get(n.getState()) != n) return Double.POSITIVE_INFINITY;
+		return n.getCost() + getHeuristic(n) / epsilon;
+	}
+
+
+	@Override
+	protected void endSearch() {
+		open = null;
+		best = null;
+		closed = null;
+		incons = null;
+		goalNode = null;
+		super.endSearch();
+	}
+
+
+	/**
+	 * @return how many times the cost of the last path may exceed the optimal cost (1 means the
+	 * path is optimal), or infinity if there is no path
+	 */
+	public double getBound() {
+		return bound;
+	}
+
+	/**
+	 * @return the number of rounds completed by the last search
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	public long getTimeLimitMicros() {
+		return timeLimitNanos / 1000;
+	}
+
+	/**
+	 * @param timeLimitMicros the hard time limit of each query
+	 */
+	public void setTimeLimitMicros(long timeLimitMicros) {
+		if (timeLimitMicros <= 0) throw new IllegalArgumentException("time limit must be positive");
+		this.timeLimitNanos = timeLimitMicros * 1000;
+	}
+
+	public double getInitialEpsilon() {
+		return initialEpsilon;
+	}
+
+	public void setInitialEpsilon(double initialEpsilon) {
+		if (initialEpsilon < 1.0) throw new IllegalArgumentException("epsilon must be at least 1");
+		this.initialEpsilon = initialEpsilon;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "ARA* Agent";
+	}
+
+}
@@ -0,0 +1,85 @@
+package path.agent;
+
+import java.util.Arrays;
+
+
+/**
+ * A monotone priority queue of int values with small int keys (Dial's bucket queue).  When
+ * every edge of a graph costs at most maxStep, the keys waiting in a Dijkstra search all lie
+ * within maxStep of the smallest one, so a ring of maxStep+1 buckets holds them all.  Pushing
+ * and popping are then O(1), with no comparisons at all.
+ * <p>
+ * Keys pushed must not be smaller than the key last popped, nor larger than it plus maxStep.
+ * Ties come out last in, first out.
+ */
+public class BucketQueue {
+
+	private final int[][] buckets;
+	private final int[] sizes;
+	private final int ring;
+
+	private int current;    // smallest key that may still be waiting
+	private int size;
+
+
+	/**
+	 * @param maxStep the largest difference between a pushed key and the last key popped
+	 */
+	public BucketQueue(int maxStep) {
+		ring = maxStep + 1;
+		buckets = new int[ring][16];
+		sizes = new int[ring];
+	}
+
+
+	public void push(int value, int key) {
+		int b = key % ring;
+		if (sizes[b] == buckets[b].length) {
+			buckets[b] = Arrays.copyOf(buckets[b], sizes[b] * 2);
+		}
+		buckets[b][sizes[b]++] = value;
+		size++;
+	}
+
+
+	/**
+	 * Removes a value with the smallest key.  The queue must not be empty.
+	 */
+	public int pop() {
+		int b = current % ring;
+		while (sizes[b] == 0) {
+			current++;
+			b = current % ring;
+		}
+		size--;
+		return buckets[b][--sizes[b]];
+	}
+
+
+	/**
+	 * @return the key of the value pop() would return next; the queue must not be empty
+	 */
+	public int peekKey() {
+		while (sizes[current % ring] == 0) current++;
+		return current;
+	}
+
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the queue and restarts the keys at zero.
+	 */
+	public void clear() {
+		Arrays.fill(sizes, 0);
+		size = 0;
+		current = 0;
+	}
+
+}
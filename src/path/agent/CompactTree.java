@@ -0,0 +1,76 @@
+package path.agent;
+
+import java.util.Arrays;
+
+
+/**
+ * A search tree stored as parallel primitive arrays.  Entry i holds the state (x, y) of the
+ * i-th node added to the tree and the index of its parent (-1 for the root).  Entries are in
+ * the order the agent generated them, so parents always precede their children.
+ */
+public class CompactTree {
+
+	private int[] xs = new int[256];
+	private int[] ys = new int[256];
+	private int[] parents = new int[256];
+	private int size;
+
+
+	/**
+	 * Empty the tree, keeping the arrays for the next search.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+
+	/**
+	 * Replaces this tree by a copy of another.
+	 */
+	public void copy(CompactTree other) {
+		clear();
+		for (int i = 0; i < other.size; i++) {
+			add(other.xs[i], other.ys[i], other.parents[i]);
+		}
+	}
+
+
+	/**
+	 * Appends a node.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param parent the index of the parent entry or -1 for the root
+	 * @return the index of the new entry
+	 */
+	public int add(int x, int y, int parent) {
+		if (size == xs.length) {
+			int capacity = size * 2;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		parents[size] = parent;
+		return size++;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public int x(int i) {
+		return xs[i];
+	}
+
+	public int y(int i) {
+		return ys[i];
+	}
+
+	public int parent(int i) {
+		return parents[i];
+	}
+
+}
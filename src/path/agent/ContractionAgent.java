@@ -0,0 +1,104 @@
+package path.agent;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * An agent answering queries from a ContractionHierarchy of the level's grid, for levels that
+ * never change.  Agents share one hierarchy per grid and connectivity (see
+ * ContractionHierarchy.shared), built by the first query that needs it or loaded from a file
+ * with load; each agent keeps only its own query scratch state.  Paths are exact shortest grid
+ * paths, the same cost as the DijkstraAgent's.
+ */
+public class ContractionAgent extends PathAgent {
+
+	private ContractionHierarchy.Query query;   // scratch state for the current hierarchy
+
+
+	public ContractionAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		Grid grid = getHierarchy().getGrid();
+		int from = grid.cellOf(start);
+		int to = grid.cellOf(goal);
+
+		path = null;
+		beginCellSearch(start.x, start.y);
+		int[] cells = query.route(from, to);
+		stats.nodesExpanded(query.getSettled());
+		endSearch();
+
+		if (cells != null) {
+			path = PathResult.ofCells(grid, cells);
+		}
+		return this.getPath();
+	}
+
+
+	/**
+	 * @return the shared hierarchy for the level's grid and the current connectivity, built if needed
+	 */
+	public ContractionHierarchy getHierarchy() {
+		Grid grid = level.grid();
+		if (query == null || query.getHierarchy().getGrid() != grid || query.getHierarchy().isAllDirection() != allDirection) {
+			query = ContractionHierarchy.shared(grid, allDirection).newQuery();
+		}
+		return query.getHierarchy();
+	}
+
+
+	/**
+	 * Answers from the given hierarchy, which also becomes the shared one for its grid.
+	 *
+	 * @throws IllegalArgumentException if it belongs to another grid or connectivity than the agent's
+	 */
+	public void setHierarchy(ContractionHierarchy hierarchy) {
+		if (hierarchy.getGrid() != level.grid()) throw new IllegalArgumentException("hierarchy of another grid");
+		if (hierarchy.isAllDirection() != allDirection) {
+			throw new IllegalArgumentException("hierarchy is " + (hierarchy.isAllDirection() ? "8" : "4")
+					+ " connected, the agent " + (allDirection ? "8" : "4") + " connected");
+		}
+		ContractionHierarchy.share(hierarchy);
+		query = hierarchy.newQuery();
+	}
+
+
+	/**
+	 * Uses a hierarchy saved earlier instead of building one (see setHierarchy).
+	 *
+	 * @throws IOException if the file cannot be read or belongs to another level
+	 * @throws IllegalArgumentException if the file's connectivity is not the agent's
+	 */
+	public void load(Path file) throws IOException {
+		setHierarchy(ContractionHierarchy.load(file, level.grid()));
+	}
+
+
+	/**
+	 * Saves the current hierarchy (building it first if needed).
+	 */
+	public void save(Path file) throws IOException {
+		getHierarchy().save(file);
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Contraction Hierarchy Agent";
+	}
+
+}
@@ -0,0 +1,661 @@
+package path.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import path.level.Grid;
+
+
+/**
+ * A contraction hierarchy over the way point grid of a static level, for answering many
+ * queries on a level that never changes.
+ * <p>
+ * Preprocessing contracts the open cells one at a time, least important first (by edge
+ * difference plus the number of neighbors already contracted).  Contracting a cell adds a
+ * shortcut between two of its remaining neighbors whenever the route through the cell is the
+ * only shortest one, checked with a bounded witness search.  Each cell ends up with a rank and
+ * its upward edges, the edges (real moves or shortcuts) to higher ranked cells.
+ * <p>
+ * A query runs Dijkstra upward from both the start and the goal; the cheapest cell reached from
+ * both sides joins the two halves of a shortest path, whose shortcuts are then unpacked into
+ * grid moves.  Costs are the DijkstraAgent's (10 per straight move, 14 per diagonal), so the
+ * paths are exactly as cheap as Dijkstra's.
+ * <p>
+ * A hierarchy can be saved and loaded again; loading checks that the grid is the one it was
+ * built for.
+ * <p>
+ * A hierarchy never changes once built, so one copy per grid serves every thread: shared
+ * returns the cached copy for a grid and connectivity, building it only the first time.  The
+ * scratch state of a query lives in a Query, one per thread (or agent).
+ */
+public class ContractionHierarchy {
+
+	private static final int MAGIC = 0x43484731;   // "CHG1"
+
+	private static final int WITNESS_SETTLE_LIMIT = 500;   // cells a witness search may settle
+
+	private static final int SHARED_GRIDS = 4;   // grids whose hierarchies the shared cache keeps
+
+	/*
+	 * The shared hierarchies, [0] 4 connected and [1] 8 connected, of the most recently used
+	 * grids.  Grids do not define equals, so they are keyed by identity; an edited level has new
+	 * grids, and the old ones fall out of the cache as it fills.
+	 */
+	private static final Map<Grid, Slot[]> SHARED = new LinkedHashMap<Grid, Slot[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Grid, Slot[]> eldest) {
+			return size() > SHARED_GRIDS;
+		}
+	};
+
+	private final Grid grid;
+
+	private final boolean allDirection;
+
+	private final int[] rank;
+
+	/*
+	 * Upward edges in compressed rows: cell c's edges are upFirst[c] .. upFirst[c + 1] - 1, each
+	 * with its higher ranked target, its cost and the cell it shortcuts (-1 for a real move).
+	 */
+	private final int[] upFirst;
+	private final int[] upTarget;
+	private final int[] upCost;
+	private final int[] upMiddle;
+
+
+	private ContractionHierarchy(Grid grid, boolean allDirection, int[] rank, int[] upFirst, int[] upTarget, int[] upCost, int[] upMiddle) {
+		this.grid = grid;
+		this.allDirection = allDirection;
+		this.rank = rank;
+		this.upFirst = upFirst;
+		this.upTarget = upTarget;
+		this.upCost = upCost;
+		this.upMiddle = upMiddle;
+	}
+
+
+	/**
+	 * A cache entry, locked while its hierarchy is built so that it is built once.
+	 */
+	private static final class Slot {
+		ContractionHierarchy hierarchy;
+	}
+
+
+
+	/*  --------------------------- PREPROCESSING --------------------------------- */
+
+	/**
+	 * Contracts every open cell of the grid.
+	 *
+	 * @param grid the way point grid of a level that will not change
+	 * @param allDirection true for 8 connected moves
+	 */
+	public static ContractionHierarchy build(Grid grid, boolean allDirection) {
+		return new Builder(grid, allDirection).build();
+	}
+
+
+	/**
+	 * @return the hierarchy of the grid and connectivity that every thread shares, built on the
+	 * first call (other callers for the same grid wait for it)
+	 */
+	public static ContractionHierarchy shared(Grid grid, boolean allDirection) {
+		Slot slot = slot(grid, allDirection);
+		synchronized (slot) {
+			if (slot.hierarchy == null) slot.hierarchy = build(grid, allDirection);
+			return slot.hierarchy;
+		}
+	}
+
+
+	/**
+	 * Makes a hierarchy (for example a loaded one) the shared one for its grid and connectivity.
+	 */
+	public static void share(ContractionHierarchy hierarchy) {
+		Slot slot = slot(hierarchy.grid, hierarchy.allDirection);
+		synchronized (slot) {
+			slot.hierarchy = hierarchy;
+		}
+	}
+
+
+	private static Slot slot(Grid grid, boolean allDirection) {
+		synchronized (SHARED) {
+			Slot[] slots = SHARED.computeIfAbsent(grid, g -> new Slot[] { new Slot(), new Slot() });
+			return slots[allDirection ? 1 : 0];
+		}
+	}
+
+
+	/**
+	 * The working graph of the preprocessing: every edge is kept at both of its ends in growable
+	 * per cell lists, and contracted cells are skipped rather than removed.
+	 */
+	private static class Builder {
+
+		final Grid grid;
+		final boolean allDirection;
+		final int n;
+
+		int[][] to, cost, middle;
+		int[] degree;
+
+		final boolean[] contracted;
+		final int[] deletedNeighbors;
+		final int[] rank;
+
+		// witness search scratch
+		final int[] wDist, wStamp;
+		int wId = 0;
+		final IntHeap wOpen = new IntHeap();
+
+		Builder(Grid grid, boolean allDirection) {
+			this.grid = grid;
+			this.allDirection = allDirection;
+			this.n = grid.size();
+			to = new int[n][];
+			cost = new int[n][];
+			middle = new int[n][];
+			degree = new int[n];
+			contracted = new boolean[n];
+			deletedNeighbors = new int[n];
+			rank = new int[n];
+			wDist = new int[n];
+			wStamp = new int[n];
+
+			for (int c = 0; c < n; c++) {
+				to[c] = new int[8];
+				cost[c] = new int[8];
+				middle[c] = new int[8];
+				for (int m = Neighbors.moves(grid, c, allDirection); m != 0; m &= m - 1) {
+					int d = Integer.numberOfTrailingZeros(m);
+					append(c, grid.neighbor(c, d), Neighbors.cost(d), -1);
+				}
+			}
+		}
+
+		void append(int a, int b, int c, int mid) {
+			if (degree[a] == to[a].length) {
+				to[a] = Arrays.copyOf(to[a], degree[a] * 2);
+				cost[a] = Arrays.copyOf(cost[a], degree[a] * 2);
+				middle[a] = Arrays.copyOf(middle[a], degree[a] * 2);
+			}
+			to[a][degree[a]] = b;
+			cost[a][degree[a]] = c;
+			middle[a][degree[a]] = mid;
+			degree[a]++;
+		}
+
+		/**
+		 * Adds or shortens the edge a - b at both ends.
+		 */
+		void addShortcut(int a, int b, int c, int mid) {
+			if (!lower(a, b, c, mid)) append(a, b, c, mid);
+			if (!lower(b, a, c, mid)) append(b, a, c, mid);
+		}
+
+		private boolean lower(int a, int b, int c, int mid) {
+			for (int i = 0; i < degree[a]; i++) {
+				if (to[a][i] == b) {
+					if (c < cost[a][i]) {
+						cost[a][i] = c;
+						middle[a][i] = mid;
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Counts (or adds) the shortcuts contracting v needs.
+		 */
+		int contract(int v, boolean simulate) {
+			int shortcuts = 0;
+			for (int i = 0; i < degree[v]; i++) {
+				int u = to[v][i];
+				if (contracted[u]) continue;
+
+				// the most any shortcut from u through v can cost bounds the witness search
+				int limit = 0;
+				for (int j = 0; j < degree[v]; j++) {
+					int w = to[v][j];
+					if (w != u && !contracted[w]) limit = Math.max(limit, cost[v][i] + cost[v][j]);
+				}
+				witness(u, v, limit);
+
+				for (int j = 0; j < degree[v]; j++) {
+					int w = to[v][j];
+					if (w == u || contracted[w]) continue;
+					if (!simulate && w < u) continue;    // each pair once when adding
+
+					int through = cost[v][i] + cost[v][j];
+					if (wStamp[w] == wId && wDist[w] <= through) continue;    // a witness path avoids v
+
+					shortcuts++;
+					if (!simulate) addShortcut(u, w, through, v);
+				}
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Dijkstra from u over uncontracted cells other than v, up to the cost limit.
+		 */
+		void witness(int u, int v, int limit) {
+			if (++wId == Integer.MAX_VALUE) {
+				Arrays.fill(wStamp, 0);
+				wId = 1;
+			}
+			wOpen.clear();
+			wStamp[u] = wId;
+			wDist[u] = 0;
+			wOpen.push(u, 0);
+
+			int count = 0;
+			while (!wOpen.isEmpty() && count < WITNESS_SETTLE_LIMIT) {
+				int key = wOpen.peekKey();
+				int c = wOpen.pop();
+				if (key > wDist[c]) continue;
+				if (key > limit) break;
+				count++;
+
+				for (int i = 0; i < degree[c]; i++) {
+					int x = to[c][i];
+					if (x == v || contracted[x]) continue;
+					int dx = key + cost[c][i];
+					if (wStamp[x] != wId || dx < wDist[x]) {
+						wStamp[x] = wId;
+						wDist[x] = dx;
+						wOpen.push(x, dx);
+					}
+				}
+			}
+		}
+
+		int priority(int v) {
+			int remaining = 0;
+			for (int i = 0; i < degree[v]; i++) {
+				if (!contracted[to[v][i]]) remaining++;
+			}
+			return contract(v, true) - remaining + deletedNeighbors[v];
+		}
+
+		ContractionHierarchy build() {
+			IntHeap queue = new IntHeap(n);
+			for (int c = 0; c < n; c++) {
+				if (grid.isOpen(c)) queue.push(c, priority(c));
+				else contracted[c] = true;
+			}
+
+			int next = 0;
+			Arrays.fill(rank, -1);
+			while (!queue.isEmpty()) {
+				int v = queue.pop();
+				int p = priority(v);
+				if (!queue.isEmpty() && p > queue.peekKey()) {
+					queue.push(v, p);    // lazy update: v got more important since it was queued
+					continue;
+				}
+
+				contract(v, false);
+				contracted[v] = true;
+				rank[v] = next++;
+				for (int i = 0; i < degree[v]; i++) deletedNeighbors[to[v][i]]++;
+			}
+
+			// keep each cell's edges to higher ranked cells
+			int[] upFirst = new int[n + 1];
+			int count = 0;
+			for (int c = 0; c < n; c++) {
+				upFirst[c] = count;
+				for (int i = 0; i < degree[c]; i++) {
+					if (rank[to[c][i]] > rank[c]) count++;
+				}
+			}
+			upFirst[n] = count;
+
+			int[] upTarget = new int[count], upCost = new int[count], upMiddle = new int[count];
+			int e = 0;
+			for (int c = 0; c < n; c++) {
+				for (int i = 0; i < degree[c]; i++) {
+					if (rank[to[c][i]] > rank[c]) {
+						upTarget[e] = to[c][i];
+						upCost[e] = cost[c][i];
+						upMiddle[e] = middle[c][i];
+						e++;
+					}
+				}
+			}
+			return new ContractionHierarchy(grid, allDirection, rank, upFirst, upTarget, upCost, upMiddle);
+		}
+	}
+
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * @return new scratch state for queries of this hierarchy, to be used by one thread at a time
+	 */
+	public Query newQuery() {
+		return new Query();
+	}
+
+
+	/**
+	 * The scratch state of queries: one set of arrays per direction (0 forward, 1 backward),
+	 * reused from query to query.  A query belongs to one thread at a time.
+	 */
+	public final class Query {
+
+		private final int[][] dist;
+		private final int[][] parent;
+		private final int[][] parentMiddle;
+		private final int[][] stamp;
+		private int searchId = 0;
+
+		private final IntHeap[] open = { new IntHeap(), new IntHeap() };
+
+		private int settled;   // cells settled by the last query
+
+
+		private Query() {
+			int n = grid.size();
+			dist = new int[2][n];
+			parent = new int[2][n];
+			parentMiddle = new int[2][n];
+			stamp = new int[2][n];
+		}
+
+
+		/**
+		 * @return the cells of a cheapest route from one cell to another, both included, or null
+		 * if there is none
+		 */
+		public int[] route(int from, int to) {
+			settled = 0;
+			if (from < 0 || to < 0 || rank[from] < 0 || rank[to] < 0) return null;
+			if (from == to) return new int[] { from };
+
+			if (++searchId == Integer.MAX_VALUE) {
+				for (int[] s : stamp) Arrays.fill(s, 0);
+				searchId = 1;
+			}
+			start(0, from);
+			start(1, to);
+
+			int best = Integer.MAX_VALUE, meet = -1;
+			while (!open[0].isEmpty() || !open[1].isEmpty()) {
+				// step the side with the smaller key; a side whose key reached best is finished
+				int side;
+				if (open[0].isEmpty()) side = 1;
+				else if (open[1].isEmpty()) side = 0;
+				else side = open[0].peekKey() <= open[1].peekKey() ? 0 : 1;
+
+				int key = open[side].peekKey();
+				if (key >= best) {
+					open[side].clear();
+					continue;
+				}
+				int c = open[side].pop();
+				if (key > dist[side][c]) continue;
+				settled++;
+
+				int other = 1 - side;
+				if (stamp[other][c] == searchId && key + dist[other][c] < best) {
+					best = key + dist[other][c];
+					meet = c;
+				}
+
+				for (int e = upFirst[c]; e < upFirst[c + 1]; e++) {
+					int x = upTarget[e];
+					int dx = key + upCost[e];
+					if (stamp[side][x] != searchId || dx < dist[side][x]) {
+						stamp[side][x] = searchId;
+						dist[side][x] = dx;
+						parent[side][x] = c;
+						parentMiddle[side][x] = upMiddle[e];
+						open[side].push(x, dx);
+					}
+				}
+			}
+			if (meet < 0) return null;
+
+			// from the start up to the meeting cell, then down to the goal
+			IntList cells = new IntList();
+			IntList hops = new IntList();
+			for (int c = meet; c != from; c = parent[0][c]) hops.add(c);
+			cells.add(from);
+			for (int i = hops.size() - 1, a = from; i >= 0; i--) {
+				int b = hops.get(i);
+				unpack(a, b, parentMiddle[0][b], cells);
+				a = b;
+			}
+			for (int c = meet; c != to; c = parent[1][c]) {
+				unpack(c, parent[1][c], parentMiddle[1][c], cells);
+			}
+			return cells.toArray();
+		}
+
+
+		private void start(int side, int cell) {
+			open[side].clear();
+			stamp[side][cell] = searchId;
+			dist[side][cell] = 0;
+			parent[side][cell] = -1;
+			open[side].push(cell, 0);
+		}
+
+
+		/**
+		 * Appends the cells after a up to and including b along the edge a - b, expanding
+		 * shortcuts (which go through middle) into grid moves.
+		 */
+		private void unpack(int a, int b, int middle, IntList cells) {
+			IntList stack = new IntList();    // pending (from, to, middle) triples, last first
+			stack.add(a);
+			stack.add(b);
+			stack.add(middle);
+			while (stack.size() > 0) {
+				int mid = stack.pop(), y = stack.pop(), x = stack.pop();
+				if (mid < 0) {
+					cells.add(y);
+					continue;
+				}
+				// x - mid and mid - y are edges too, stored at mid, the lower ranked end
+				stack.add(mid);
+				stack.add(y);
+				stack.add(middleOf(mid, y));
+				stack.add(x);
+				stack.add(mid);
+				stack.add(middleOf(mid, x));
+			}
+		}
+
+
+		/**
+		 * @return the cost (tenths of a stride) of a cheapest route between two cells, or
+		 * DijkstraAgent.UNREACHABLE
+		 */
+		public int cost(int from, int to) {
+			int[] r = route(from, to);
+			if (r == null) return DijkstraAgent.UNREACHABLE;
+			int total = 0;
+			for (int i = 1; i < r.length; i++) {
+				total += (grid.col(r[i]) != grid.col(r[i - 1]) && grid.row(r[i]) != grid.row(r[i - 1]))
+						? DijkstraAgent.DIAGONAL_COST : DijkstraAgent.STRAIGHT_COST;
+			}
+			return total;
+		}
+
+
+		/**
+		 * @return the number of cells settled by the last query
+		 */
+		public int getSettled() {
+			return settled;
+		}
+
+		public ContractionHierarchy getHierarchy() {
+			return ContractionHierarchy.this;
+		}
+
+	}
+
+
+	/**
+	 * @return the middle cell of the upward edge from low to high
+	 */
+	private int middleOf(int low, int high) {
+		for (int e = upFirst[low]; e < upFirst[low + 1]; e++) {
+			if (upTarget[e] == high) return upMiddle[e];
+		}
+		throw new IllegalStateException("no edge " + low + " - " + high);
+	}
+
+
+	/**
+	 * A growable int list for unpacking.
+	 */
+	private static final class IntList {
+		int[] a = new int[16];
+		int size;
+
+		void add(int v) {
+			if (size == a.length) a = Arrays.copyOf(a, size * 2);
+			a[size++] = v;
+		}
+		int pop() {
+			return a[--size];
+		}
+		int get(int i) {
+			return a[i];
+		}
+		int size() {
+			return size;
+		}
+		int[] toArray() {
+			return Arrays.copyOf(a, size);
+		}
+	}
+
+
+
+	/*  --------------------------- PERSISTENCE --------------------------------- */
+
+	/**
+	 * Writes the hierarchy to a file.
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(grid.cols());
+			out.writeInt(grid.rows());
+			out.writeInt(grid.stride());
+			out.writeBoolean(allDirection);
+			out.writeLong(fingerprint(grid));
+			writeInts(out, rank);
+			writeInts(out, upFirst);
+			writeInts(out, upTarget);
+			writeInts(out, upCost);
+			writeInts(out, upMiddle);
+		}
+	}
+
+
+	/**
+	 * Reads a hierarchy saved for the given grid.  Every array length is checked against the
+	 * grid (and the edge count against the file size) before anything is allocated, and the
+	 * edges against the grid's cells, so a corrupt file is reported rather than trusted.
+	 *
+	 * @throws IOException if the file cannot be read, is corrupt or was built for a different grid
+	 */
+	public static ContractionHierarchy load(Path file, Grid grid) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) throw new IOException(file + ": not a contraction hierarchy");
+			int cols = in.readInt(), rows = in.readInt(), stride = in.readInt();
+			boolean allDirection = in.readBoolean();
+			long fingerprint = in.readLong();
+			if (cols != grid.cols() || rows != grid.rows() || stride != grid.stride() || fingerprint != fingerprint(grid)) {
+				throw new IOException(file + ": built for a different level");
+			}
+
+			int n = grid.size();
+			int[] rank = readInts(in, n, file);
+			int[] upFirst = readInts(in, n + 1, file);
+			int edges = upFirst[n];
+			if (upFirst[0] != 0 || edges < 0 || edges > Files.size(file) / 12) throw new IOException(file + ": corrupt");
+			for (int c = 0; c < n; c++) {
+				if (upFirst[c] > upFirst[c + 1]) throw new IOException(file + ": corrupt");
+			}
+
+			int[] upTarget = readInts(in, edges, file);
+			int[] upCost = readInts(in, edges, file);
+			int[] upMiddle = readInts(in, edges, file);
+			for (int e = 0; e < edges; e++) {
+				if (upTarget[e] < 0 || upTarget[e] >= n || upMiddle[e] < -1 || upMiddle[e] >= n) {
+					throw new IOException(file + ": corrupt");
+				}
+			}
+			return new ContractionHierarchy(grid, allDirection, rank, upFirst, upTarget, upCost, upMiddle);
+		}
+	}
+
+
+	/**
+	 * A hash of every cell's move mask, identifying the grid the hierarchy belongs to.
+	 */
+	private static long fingerprint(Grid grid) {
+		long h = 1125899906842597L;
+		for (int c = 0; c < grid.size(); c++) {
+			h = 31 * h + grid.moves(c);
+		}
+		return h;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+		out.writeInt(a.length);
+		for (int v : a) out.writeInt(v);
+	}
+
+	/**
+	 * Reads an array written by writeInts that must hold exactly length ints.
+	 */
+	private static int[] readInts(DataInputStream in, int length, Path file) throws IOException {
+		if (in.readInt() != length) throw new IOException(file + ": corrupt");
+		int[] a = new int[length];
+		for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+		return a;
+	}
+
+
+
+	/*  --------------------------- GETTERS --------------------------------- */
+
+	public Grid getGrid() {
+		return grid;
+	}
+
+	public boolean isAllDirection() {
+		return allDirection;
+	}
+
+	/**
+	 * @return the number of upward edges, real and shortcut
+	 */
+	public int edgeCount() {
+		return upTarget.length;
+	}
+
+}
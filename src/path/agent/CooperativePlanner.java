@@ -0,0 +1,396 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * Plans collision free paths for several units sharing one level, in the style of Windowed
+ * Hierarchical Cooperative A* (WHCA*).
+ * <p>
+ * Time advances in ticks; every tick a unit moves to a neighboring way point or waits.  Each
+ * planning cycle the units plan in priority order with a space-time A* that only looks
+ * window ticks ahead.  A unit's plan is written into a shared ReservationTable and units
+ * planning later treat those reservations as obstacles (including head-on swaps).  Beyond
+ * the window the search is guided by the true distance to the unit's goal, computed once
+ * per goal with a breadth first sweep of the grid.
+ * <p>
+ * Units then follow their plans for a few ticks before the next cycle.  The priority order
+ * rotates every cycle so no unit is starved of good routes.
+ * <p>
+ * The space-time search keeps its visited states in a ReservationTable of its own, so its
+ * memory grows with the states a search actually touches, not with the grid size times the
+ * window.
+ * <p>
+ * NOTE: The plans are always collision free, but they are not complete: units heading past
+ * each other in a corridor too narrow to pass can wait for each other forever.
+ */
+public class CooperativePlanner {
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private static final int REPLANS = 3;   // tries at planning a cycle with no unit boxed in
+
+	private final Grid grid;
+
+	private final int window;      // how many ticks ahead each unit plans
+
+	private boolean allDirection;  // 8 connected moves if true, 4 connected otherwise
+
+	private final ReservationTable reservations;
+
+	private final Map<Integer, int[]> distanceToGoal = new HashMap<>();   // goal cell -> distance per cell
+
+	/*
+	 * Per unit state: current cell, goal cell, the windowed plan (cells for ticks 0..window)
+	 * and the cells visited so far.
+	 */
+	private int[] positions = new int[0];
+	private int[] goals = new int[0];
+	private int[][] plans = new int[0][];
+	private final List<List<Point>> traveled = new ArrayList<>();
+
+	private int[] order = new int[0];   // planning priority, highest first
+
+	private int[] rank = new int[0];    // each unit's place in this cycle's order
+
+	private final ReservationTable standing = new ReservationTable(16);   // (position, 0) -> unit holding it
+
+	/*
+	 * Scratch space for the space-time search, reused by every unit and every cycle: the
+	 * states reached so far (the cell, tick and parent of each), and for every (cell, tick)
+	 * reached the state holding it.
+	 */
+	private int[] stateCell = new int[256];
+	private int[] stateTime = new int[256];
+	private int[] stateParent = new int[256];
+	private int states;
+
+	private final ReservationTable visited;
+
+	private final IntHeap open = new IntHeap();
+
+
+	/**
+	 * @param lvl the shared level
+	 * @param window how many ticks ahead each unit plans (at least 1)
+	 */
+	public CooperativePlanner(Level lvl, int window) {
+		this(lvl.grid(), window);
+	}
+
+	/**
+	 * @param grid the way point grid of the shared level
+	 * @param window how many ticks ahead each unit plans (at least 1)
+	 */
+	public CooperativePlanner(Grid grid, int window) {
+		if (window < 1) throw new IllegalArgumentException("window must be at least one tick");
+
+		this.grid = grid;
+		this.window = window;
+		this.reservations = new ReservationTable(16 * (window + 1));
+		this.visited = new ReservationTable(64 * (window + 1));
+	}
+
+
+	/**
+	 * Adds a unit.  Both points are snapped to the way point grid.
+	 *
+	 * @return the unit's id, used by the other methods
+	 */
+	public int addUnit(Point start, Point goal) {
+		int s = grid.cellOf(start);
+		int g = grid.cellOf(goal);
+		if (s < 0 || !grid.isOpen(s)) throw new IllegalArgumentException("start is not a valid way point: " + start);
+		if (g < 0 || !grid.isOpen(g)) throw new IllegalArgumentException("goal is not a valid way point: " + goal);
+
+		int id = positions.length;
+		positions = Arrays.copyOf(positions, id + 1);
+		goals = Arrays.copyOf(goals, id + 1);
+		plans = Arrays.copyOf(plans, id + 1);
+		order = Arrays.copyOf(order, id + 1);
+		rank = Arrays.copyOf(rank, id + 1);
+
+		positions[id] = s;
+		goals[id] = g;
+		order[id] = id;
+
+		List<Point> history = new LinkedList<>();
+		history.add(grid.point(s));
+		traveled.add(history);
+
+		return id;
+	}
+
+
+	/**
+	 * One planning cycle: every unit replans its next window ticks in priority order against
+	 * the reservations of the units before it.  The cost is one bounded search per unit.
+	 * <p>
+	 * A unit boxed in by the plans before it would have to wait where it is, possibly in the
+	 * way of those plans, so it is moved to the front of the order and the cycle planned again.
+	 * If units are still boxed in after a few tries, the cycle is planned once more with every
+	 * unit holding its way point until its turn, which no unit before it may plan into; then
+	 * every unit can at least wait, and the plans are collision free.
+	 */
+	public void plan() {
+		if (order.length == 0) {
+			reservations.clear();
+			return;
+		}
+
+		boolean planned = false;
+		for (int attempt = 0; attempt < REPLANS && !planned; attempt++) {
+			int boxed = planAll(false);
+			if (boxed < 0) planned = true;
+			else promote(boxed);
+		}
+		if (!planned) planAll(true);
+
+		// rotate priorities so that the unit that planned first this time plans last next time
+		int first = order[0];
+		System.arraycopy(order, 1, order, 0, order.length - 1);
+		order[order.length - 1] = first;
+	}
+
+
+	/**
+	 * Plans every unit in order.
+	 *
+	 * @param holdPositions true to keep units off the way points of the units after them
+	 * @return the first unit that found no route (and planned to wait in place), or -1
+	 */
+	private int planAll(boolean holdPositions) {
+		reservations.clear();
+		standing.clear();
+		for (int i = 0; i < order.length; i++) {
+			rank[order[i]] = i;
+			if (holdPositions) standing.reserve(positions[order[i]], 0, order[i]);
+		}
+
+		for (int id : order) {
+			plans[id] = planUnit(id);
+			if (plans[id] == null) {
+				plans[id] = new int[window + 1];
+				Arrays.fill(plans[id], positions[id]);    // boxed in: wait and hope the others move
+				if (!holdPositions) return id;
+			}
+			for (int t = 0; t <= window; t++) {
+				reservations.reserve(plans[id][t], t, id);
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Moves a unit to the front of the planning order, keeping the others in theirs.
+	 */
+	private void promote(int unit) {
+		int i = rank[unit];
+		System.arraycopy(order, 0, order, 1, i);
+		order[0] = unit;
+	}
+
+
+	/**
+	 * Moves every unit along its current plan.
+	 *
+	 * @param ticks how many ticks to execute, at most the window
+	 */
+	public void advance(int ticks) {
+		ticks = Math.min(ticks, window);
+
+		for (int id = 0; id < positions.length; id++) {
+			if (plans[id] == null) continue;
+
+			for (int t = 1; t <= ticks; t++) {
+				traveled.get(id).add(grid.point(plans[id][t]));
+			}
+			positions[id] = plans[id][ticks];
+			plans[id] = null;
+		}
+	}
+
+
+	/**
+	 * Alternates planning and executing half a window at a time until every unit has
+	 * arrived or the tick limit is reached.
+	 *
+	 * @param maxTicks a bound on the number of ticks to simulate
+	 * @return the way points visited by each unit, one entry per tick, indexed by unit id
+	 */
+	public List<List<Point>> solve(int maxTicks) {
+		int step = Math.max(1, window / 2);
+
+		for (int ticks = 0; ticks < maxTicks && !allArrived(); ticks += step) {
+			plan();
+			advance(Math.min(step, maxTicks - ticks));
+		}
+		return traveled;
+	}
+
+
+	/**
+	 * @return true when every unit stands on its goal
+	 */
+	public boolean allArrived() {
+		for (int id = 0; id < positions.length; id++)
+			if (positions[id] != goals[id]) return false;
+		return true;
+	}
+
+	public Point getPosition(int unit) {
+		return grid.point(positions[unit]);
+	}
+
+	public Point getGoal(int unit) {
+		return grid.point(goals[unit]);
+	}
+
+	/**
+	 * @return the way points visited by the unit so far, starting with its start
+	 */
+	public List<Point> getTraveled(int unit) {
+		return traveled.get(unit);
+	}
+
+	public int getUnitCount() {
+		return positions.length;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @param myAllDirection true to allow diagonal moves
+	 */
+	public void setAllDirection(boolean myAllDirection) {
+		if (allDirection != myAllDirection) distanceToGoal.clear();
+		allDirection = myAllDirection;
+	}
+
+
+
+	/**
+	 * Space-time A* for one unit from (position, 0).  A state is terminal when it reaches the
+	 * window horizon, or when it stands on the goal and the goal stays free for the rest of
+	 * the window.  Every tick costs 1 and the heuristic is the true distance to the goal.
+	 *
+	 * @return the cells occupied at ticks 0..window, or null if the unit is boxed in
+	 */
+	private int[] planUnit(int id) {
+		int[] h = distances(goals[id]);
+		int moves = allDirection ? 8 : 4;
+
+		visited.clear();
+		open.clear();
+		states = 0;
+
+		int start = positions[id];
+		open.push(addState(start, 0, -1), h[start] == UNREACHABLE ? window : h[start]);
+
+		int terminal = -1;
+		while (!open.isEmpty()) {
+			int state = open.pop();
+			int t = stateTime[state];
+			int c = stateCell[state];
+
+			if (t == window || (c == goals[id] && goalStaysFree(c, t, id))) {
+				terminal = state;
+				break;
+			}
+
+			for (int m = -1; m < moves; m++) {
+				int n = (m < 0) ? c : grid.neighbor(c, Action.of(m).dx(), Action.of(m).dy());
+				if (n < 0 || h[n] == UNREACHABLE) continue;
+
+				if (visited.owner(n, t + 1) >= 0) continue;
+				if (!reservations.canMove(c, n, t, id)) continue;
+
+				int holder = standing.owner(n, 0);
+				if (holder >= 0 && rank[holder] > rank[id]) continue;   // a unit yet to plan stands there
+
+				open.push(addState(n, t + 1, state), (t + 1) + h[n]);
+			}
+		}
+
+		if (terminal < 0) return null;
+
+		int[] plan = new int[window + 1];
+		Arrays.fill(plan, stateTime[terminal], window + 1, stateCell[terminal]);
+		for (int s = terminal; s >= 0; s = stateParent[s]) {
+			plan[stateTime[s]] = stateCell[s];
+		}
+		return plan;
+	}
+
+
+	/**
+	 * Records a newly reached state and marks its (cell, tick) visited.
+	 *
+	 * @return the state's index
+	 */
+	private int addState(int cell, int time, int parent) {
+		if (states == stateCell.length) {
+			stateCell = Arrays.copyOf(stateCell, 2 * states);
+			stateTime = Arrays.copyOf(stateTime, 2 * states);
+			stateParent = Arrays.copyOf(stateParent, 2 * states);
+		}
+		stateCell[states] = cell;
+		stateTime[states] = time;
+		stateParent[states] = parent;
+		visited.reserve(cell, time, states);
+		return states++;
+	}
+
+
+	private boolean goalStaysFree(int goal, int from, int id) {
+		for (int t = from; t <= window; t++)
+			if (!reservations.isFree(goal, t, id)) return false;
+		return true;
+	}
+
+
+	/**
+	 * Breadth first sweep outward from the goal giving the number of moves from every cell
+	 * to the goal (UNREACHABLE for blocked or disconnected cells).  Cached per goal.
+	 */
+	private int[] distances(int goal) {
+		int[] dist = distanceToGoal.get(goal);
+		if (dist != null) return dist;
+
+		dist = new int[grid.size()];
+		Arrays.fill(dist, UNREACHABLE);
+
+		int[] queue = new int[grid.size()];
+		int head = 0, tail = 0;
+
+		dist[goal] = 0;
+		queue[tail++] = goal;
+		while (head < tail) {
+			int c = queue[head++];
+			for (int m = Neighbors.moves(grid, c, allDirection); m != 0; m &= m - 1) {
+				int n = grid.neighbor(c, Integer.numberOfTrailingZeros(m));
+				if (dist[n] == UNREACHABLE) {
+					dist[n] = dist[c] + 1;
+					queue[tail++] = n;
+				}
+			}
+		}
+
+		distanceToGoal.put(goal, dist);
+		return dist;
+	}
+
+
+}
@@ -0,0 +1,296 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * A uniform cost (Dijkstra) agent giving exact shortest paths on the way point grid.  Straight
+ * moves cost 10 and diagonal moves 14 (tenths of a stride), so every cost is a small integer and
+ * the fringe is a BucketQueue instead of a comparison based priority queue.
+ * <p>
+ * All per state bookkeeping lives in primitive arrays indexed by grid cell and reused from one
+ * search to the next.  Besides answering queries, the agent can sweep the whole level from one
+ * source to produce a distance table (see distanceTable), and answer a query with many goals in
+ * a single sweep (see findNearest and findAll).
+ * <p>
+ * This agent searches over cells, not Node objects, so its tree is kept as a compact tree.
+ */
+public class DijkstraAgent extends PathAgent {
+
+	public static final int STRAIGHT_COST = 10;
+
+	public static final int DIAGONAL_COST = 14;
+
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private Grid grid;
+
+	/*
+	 * Per cell search state; a cell's entries are only meaningful when its stamp equals
+	 * the current search id.
+	 */
+	private int[] cost;
+	private int[] parent;
+	private int[] depth;
+	private int[] treeIndex;
+	private int[] stamp;
+	private boolean[] closed;
+	private int searchId = 0;
+
+	private int[] target;       // cell is a goal of the current multi-goal search when its entry == targetId
+	private int targetId = 0;
+
+	private final BucketQueue fringe = new BucketQueue(DIAGONAL_COST);
+
+
+	public DijkstraAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	/**
+	 * Expands cells in order of their exact cost from the start until the goal is taken
+	 * off the fringe.
+	 */
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		Grid g = getGrid();
+		int from = g.cellOf(start);
+		int to = g.cellOf(goal);
+
+		path = null;
+		if (from < 0 || !g.isOpen(from) || to < 0) return null;
+
+		int found = sweep(g, from, to, 0);
+		if (found >= 0) {
+			path = PathResult.ofParents(grid, parent, found);
+		}
+		return this.getPath();
+	}
+
+
+	/**
+	 * Runs Dijkstra from the source over every reachable cell.
+	 *
+	 * @param source any way point in the level
+	 * @return the cost (tenths of a stride) from the source to every cell of getGrid(), or
+	 * UNREACHABLE, indexed by cell id; a new array owned by the caller
+	 */
+	public int[] distanceTable(Point source) {
+		Grid g = getGrid();
+		int from = g.cellOf(source);
+
+		int[] table = new int[g.size()];
+		Arrays.fill(table, UNREACHABLE);
+		if (from < 0 || !g.isOpen(from)) return table;
+
+		sweep(g, from, -1, 0);
+		for (int c = 0; c < table.length; c++) {
+			if (stamp[c] == searchId) table[c] = cost[c];
+		}
+		return table;
+	}
+
+
+	/**
+	 * Expands cells in order of their cost from the start until the first goal is taken off the
+	 * fringe, which is then the nearest.  One sweep serves all the goals.
+	 */
+	@Override
+	public PathResult findNearest(Collection<Point> goals) {
+		assert start != null;
+
+		Grid g = getGrid();
+		int from = g.cellOf(start);
+		path = null;
+		if (from < 0 || !g.isOpen(from)) return null;
+
+		int targets = markTargets(g, goals);
+		if (targets == 0) return null;
+
+		int found = sweep(g, from, -1, 1);
+		if (found >= 0) {
+			goal = g.point(found);
+			path = PathResult.ofParents(grid, parent, found);
+		}
+		return path;
+	}
+
+
+	/**
+	 * Sweeps outward from the start until every goal has been taken off the fringe (or nothing
+	 * is left), then reads each goal's path from the one search tree.
+	 */
+	@Override
+	public List<PathResult> findAll(List<Point> goals) {
+		assert start != null;
+
+		Grid g = getGrid();
+		int from = g.cellOf(start);
+		path = null;
+		List<PathResult> paths = new ArrayList<>(goals.size());
+		if (from < 0 || !g.isOpen(from)) {
+			for (int i = 0; i < goals.size(); i++) paths.add(null);
+			return paths;
+		}
+
+		int targets = markTargets(g, goals);
+		if (targets > 0) sweep(g, from, -1, targets);
+
+		int nearest = -1;
+		for (Point p : goals) {
+			int c = g.cellOf(p);
+			if (c < 0 || target[c] != targetId || stamp[c] != searchId || !closed[c]) {
+				paths.add(null);
+				continue;
+			}
+			paths.add(PathResult.ofParents(grid, parent, c));
+			if (nearest < 0 || cost[c] < cost[nearest]) nearest = c;
+		}
+		if (nearest >= 0) {
+			goal = g.point(nearest);
+			path = PathResult.ofParents(grid, parent, nearest);
+		}
+		return paths;
+	}
+
+
+	/**
+	 * Marks the open goal cells for the next sweep.
+	 *
+	 * @return the number of distinct goal cells marked
+	 */
+	private int markTargets(Grid g, Collection<Point> goals) {
+		if (++targetId == Integer.MAX_VALUE) {
+			Arrays.fill(target, 0);
+			targetId = 1;
+		}
+		int count = 0;
+		for (Point p : goals) {
+			int c = g.cellOf(p);
+			if (c >= 0 && g.isOpen(c) && target[c] != targetId) {
+				target[c] = targetId;
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * The search proper.
+	 *
+	 * @param g the grid, fetched once so an edit of the level cannot change it mid search
+	 * @param from the start cell
+	 * @param to the goal cell, or -1 for none
+	 * @param targets how many of the cells marked by markTargets to take off the fringe before
+	 * stopping, or 0 to ignore the marks
+	 * @return the goal cell (or the last marked cell) if it was reached, -1 otherwise
+	 */
+	private int sweep(Grid g, int from, int to, int targets) {
+
+		if (++searchId == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			searchId = 1;
+		}
+		fringe.clear();
+
+		stamp[from] = searchId;
+		cost[from] = 0;
+		parent[from] = -1;
+		depth[from] = 0;
+		closed[from] = false;
+		treeIndex[from] = beginCellSearch(g.x(from), g.y(from));
+		fringe.push(from, 0);
+
+		while (!fringe.isEmpty()) {
+			int key = fringe.peekKey();
+			int c = fringe.pop();
+			if (closed[c] || key > cost[c]) continue;   // stale duplicate
+
+			closed[c] = true;
+			if (c == to || (targets > 0 && target[c] == targetId && --targets == 0)) {
+				endSearch();
+				return c;
+			}
+			cellExpanded(g.x(c), g.y(c));
+
+			for (int m = Neighbors.moves(g, c, allDirection); m != 0; m &= m - 1) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int n = g.neighbor(c, d);
+
+				int gn = key + Neighbors.cost(d);
+				if (stamp[n] != searchId) {
+					stamp[n] = searchId;
+					closed[n] = false;
+				}
+				else if (closed[n] || gn >= cost[n]) {
+					continue;
+				}
+
+				cost[n] = gn;
+				parent[n] = c;
+				depth[n] = depth[c] + 1;
+				treeIndex[n] = cellReached(g.x(n), g.y(n), depth[n], treeIndex[c]);
+				fringe.push(n, gn);
+			}
+		}
+
+		endSearch();
+		return -1;
+	}
+
+
+	/**
+	 * @return the exact cost of the last path found, in level units, or infinity if none
+	 */
+	public double getPathCost() {
+		if (path == null) return Double.POSITIVE_INFINITY;
+		return cost[grid.cellOf(goal)] * grid.stride() / 10.0;
+	}
+
+
+	/**
+	 * @return the way point grid of the level, picking up a rebuilt grid if the level changed
+	 * (the search arrays are kept when it is the same size)
+	 */
+	public Grid getGrid() {
+		Grid current = level.grid();
+		if (grid != current) {
+			boolean sameSize = grid != null && grid.size() == current.size();
+			grid = current;
+			if (sameSize) return grid;
+
+			int n = grid.size();
+			cost = new int[n];
+			parent = new int[n];
+			depth = new int[n];
+			treeIndex = new int[n];
+			stamp = new int[n];
+			closed = new boolean[n];
+			target = new int[n];
+			searchId = 0;
+			targetId = 0;
+		}
+		return grid;
+	}
+
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Dijkstra Agent";
+	}
+
+}
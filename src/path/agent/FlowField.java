@@ -0,0 +1,219 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.Grid;
+
+
+/**
+ * A flow field toward one goal: a single reverse Dijkstra sweep outward from the goal over the
+ * whole way point grid, recording for every cell the cost of its cheapest route to the goal and
+ * the action (ordinal) that takes it one step along that route.
+ * <p>
+ * Once built, any number of units heading for the same goal just follow the arrows, one array
+ * read per step, instead of each running its own search.
+ * <p>
+ * A field may also lead to the nearest of several goals (resources, cover, exits).  The sweep
+ * then starts from all of them at once, so it costs no more than a field toward one goal.
+ * <p>
+ * Costs are the DijkstraAgent's, in tenths of a stride: 10 for a straight move and 14 for a
+ * diagonal one, so the sweep uses a BucketQueue.
+ */
+public class FlowField {
+
+	/**
+	 * The direction recorded for the goal itself and for cells with no route to the goal.
+	 */
+	public static final byte NONE = -1;
+
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final Grid grid;
+
+	private final int[] goals;         // goal cells
+
+	private final byte[] direction;    // Action ordinal to take from each cell, or NONE
+
+	private final int[] cost;          // cost to the nearest goal from each cell, or UNREACHABLE
+
+	private int settled;               // cells the sweep settled
+
+
+	/**
+	 * Builds the field.
+	 *
+	 * @param grid the way point grid of the level
+	 * @param goalPoint the goal, snapped to the grid
+	 * @param allDirection true to allow diagonal moves
+	 */
+	public FlowField(Grid grid, Point goalPoint, boolean allDirection) {
+		this(grid, Collections.singletonList(goalPoint), allDirection);
+	}
+
+	/**
+	 * Builds a field toward whichever of the goals is nearest.
+	 *
+	 * @param grid the way point grid of the level
+	 * @param goalPoints the goals, snapped to the grid; at least one
+	 * @param allDirection true to allow diagonal moves
+	 */
+	public FlowField(Grid grid, Collection<Point> goalPoints, boolean allDirection) {
+		if (goalPoints.isEmpty()) throw new IllegalArgumentException("no goals");
+		this.grid = grid;
+		this.goals = new int[goalPoints.size()];
+		int i = 0;
+		for (Point p : goalPoints) {
+			int goal = grid.cellOf(p);
+			if (goal < 0 || !grid.isOpen(goal)) throw new IllegalArgumentException("goal is not a valid way point: " + p);
+			goals[i++] = goal;
+		}
+
+		direction = new byte[grid.size()];
+		cost = new int[grid.size()];
+		Arrays.fill(direction, NONE);
+		Arrays.fill(cost, UNREACHABLE);
+
+		sweep(Neighbors.directions(allDirection));
+	}
+
+
+	/**
+	 * Reverse Dijkstra from the goals.  Moves are symmetric so the cheapest route out of the goals
+	 * to a cell, reversed, is the cheapest route from that cell to the nearest goal.
+	 */
+	private void sweep(int directions) {
+		BucketQueue open = new BucketQueue(DijkstraAgent.DIAGONAL_COST);
+
+		for (int goal : goals) {
+			if (cost[goal] == 0) continue;   // listed twice
+			cost[goal] = 0;
+			open.push(goal, 0);
+		}
+
+		while (!open.isEmpty()) {
+			int key = open.peekKey();
+			int c = open.pop();
+			if (key > cost[c]) continue;    // stale entry, c was settled more cheaply
+			settled++;
+
+			for (int m = grid.moves(c) & directions; m != 0; m &= m - 1) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int n = grid.neighbor(c, d);
+
+				int g = key + Neighbors.cost(d);
+				if (g < cost[n]) {
+					cost[n] = g;
+					direction[n] = (byte) (d ^ 1);   // from n, step back toward c (the opposite direction)
+					open.push(n, g);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return the number of cells the sweep settled (every cell that reaches a goal)
+	 */
+	public int getSettled() {
+		return settled;
+	}
+
+
+	/**
+	 * @return the Action ordinal to take from the cell, or NONE at the goal or when unreachable
+	 */
+	public byte direction(int cell) {
+		return direction[cell];
+	}
+
+	/**
+	 * @return the cost from the cell to the goal in tenths of a stride, or UNREACHABLE
+	 */
+	public int cost(int cell) {
+		return cost[cell];
+	}
+
+	/**
+	 * @return the action to take from the point, or null at the goal or when unreachable
+	 */
+	public Action action(Point p) {
+		int c = grid.cellOf(p);
+		if (c < 0 || direction[c] == NONE) return null;
+		return Action.of(direction[c]);
+	}
+
+	/**
+	 * @return true if a route leads from the point to the goal
+	 */
+	public boolean reaches(Point p) {
+		int c = grid.cellOf(p);
+		return c >= 0 && cost[c] != UNREACHABLE;
+	}
+
+	/**
+	 * @return the distance along the cheapest route from the point to the goal in level units,
+	 * or infinity if there is none
+	 */
+	public double distance(Point p) {
+		int c = grid.cellOf(p);
+		if (c < 0 || cost[c] == UNREACHABLE) return Double.POSITIVE_INFINITY;
+		return cost[c] * grid.stride() / 10.0;
+	}
+
+	/**
+	 * Follows the arrows from a point to the (nearest) goal.
+	 *
+	 * @return the way points from the start (snapped to the grid) to the goal, or null if the
+	 * goal cannot be reached from there
+	 */
+	public PathResult pathFrom(Point start) {
+		int from = grid.cellOf(start);
+		if (from < 0 || cost[from] == UNREACHABLE) return null;
+
+		int n = 1;
+		for (int c = from; cost[c] != 0; c = downhill(c)) n++;   // only goals cost nothing
+
+		int[] xy = new int[2 * n];
+		int c = from;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) c = downhill(c);
+			xy[2 * i] = grid.x(c);
+			xy[2 * i + 1] = grid.y(c);
+		}
+		return PathResult.ofCoordinates(xy);
+	}
+
+	/**
+	 * @return the cell the arrow of c points to
+	 */
+	private int downhill(int c) {
+		Action a = Action.of(direction[c]);
+		return grid.cell(grid.col(c) + a.dx(), grid.row(c) + a.dy());
+	}
+
+	/**
+	 * @return the (first) goal
+	 */
+	public Point getGoal() {
+		return grid.point(goals[0]);
+	}
+
+	/**
+	 * @return the goals, in the order given
+	 */
+	public List<Point> getGoals() {
+		List<Point> points = new ArrayList<>(goals.length);
+		for (int goal : goals) points.add(grid.point(goal));
+		return points;
+	}
+
+	public Grid getGrid() {
+		return grid;
+	}
+
+}
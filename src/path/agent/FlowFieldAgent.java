@@ -0,0 +1,133 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * An agent that answers queries by following a FlowField toward the goal.  The field is built
+ * once per goal (one sweep over the whole level) and reused for every later query with the
+ * same goal, so sending many units to one rally point costs a single search.  Likewise
+ * findNearest builds one field toward all the candidate goals, and every later unit asking for
+ * the nearest of the same goals just follows it.
+ * <p>
+ * This agent does not build a search tree: its tree is just the start.  A query that sweeps the
+ * level counts the cells the sweep settled as expanded; one that follows an existing field
+ * expands nothing.
+ */
+public class FlowFieldAgent extends PathAgent {
+
+	private Grid grid;
+
+	private FlowField field;
+
+	private List<Point> fieldGoals;   // the goals the current field leads to
+
+	private boolean fieldAllDirection;   // the connectivity the current field was built with
+
+
+	public FlowFieldAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	/**
+	 * Follows the flow field for the current goal, sweeping the level first if the goal
+	 * (or connectivity) changed since the last query.
+	 */
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		path = null;
+		beginCellSearch(start.x, start.y);
+		if (level.isValid(goal)) {   // no field can lead into an obstacle
+			path = follow(Collections.singletonList(goal));
+		}
+		endSearch();
+		return this.getPath();
+	}
+
+
+	/**
+	 * Follows a field toward all the goals at once, sweeping the level first unless the last
+	 * field led to the same goals.  Goals inside obstacles are ignored.
+	 */
+	@Override
+	public PathResult findNearest(Collection<Point> goals) {
+		assert start != null;
+
+		path = null;
+		List<Point> valid = new ArrayList<>(goals.size());
+		for (Point p : goals) {
+			if (level.isValid(p)) valid.add(p);
+		}
+
+		beginCellSearch(start.x, start.y);
+		if (!valid.isEmpty()) {
+			path = follow(valid);
+		}
+		endSearch();
+
+		if (path != null) goal = path.get(path.size() - 1);
+		return path;
+	}
+
+
+	/**
+	 * @return the path along the field toward the goals from the start, or null; the sweep's
+	 * settled cells count as expanded when the field had to be built
+	 */
+	private PathResult follow(List<Point> goals) {
+		FlowField before = field;
+		FlowField f = getFlowField(goals);
+		if (f != before) stats.nodesExpanded(f.getSettled());
+		return f.pathFrom(start);
+	}
+
+
+	/**
+	 * @return the field toward the current goal, built if needed
+	 */
+	public FlowField getFlowField() {
+		return getFlowField(Collections.singletonList(goal));
+	}
+
+
+	private FlowField getFlowField(List<Point> goals) {
+		Grid current = level.grid();
+		if (grid != current) {
+			grid = current;
+			field = null;
+		}
+		if (field == null || !fieldGoals.equals(goals) || fieldAllDirection != allDirection) {
+			field = new FlowField(grid, goals, allDirection);
+			fieldGoals = new ArrayList<>(goals);
+			fieldAllDirection = allDirection;
+		}
+		return field;
+	}
+
+
+	@Override
+	public void setLevel(Level level) {
+		super.setLevel(level);
+		grid = null;
+		field = null;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Flow Field Agent";
+	}
+
+}
@@ -1,58 +1,94 @@
 package path.agent;
 import java.awt.Point;
-import java.util.LinkedList;
 import java.util.List;
 
+import path.level.Grid;
 import path.level.Level;
 
 
 /**
- * An instance of this class is for demonstration purposes only and represents an agent
- * that does not plan at all and can walk through obstacles on the level.   
+ * An instance of this class walks straight from the start to the goal when it can.  A ghost
+ * first tests line of sight on the level's way point grid (see Neighbors.line); when the line
+ * is clear, the cells along it are the path, found in time proportional to its length with no
+ * search at all.  When the line is blocked, or the start or goal is off the grid, the ghost
+ * falls through to a real search by its fallback agent (A* unless told otherwise).
+ * <p>
+ * A clear line is a shortest path, so the ghost is as good as its fallback and much faster in
+ * open terrain.
  */
 public class GhostAgent extends PathAgent {
-	
+
+	private final PathAgent fallback;	// searches when the line is blocked
+
+	private boolean straight;	// true if the last path is the straight line
+
 
 	public GhostAgent(Level lvl) {
+		this(lvl, new AstarAgent(lvl));
+	}
+
+	/**
+	 * @param lvl the level
+	 * @param fallback the agent searching when the straight line is blocked
+	 */
+	public GhostAgent(Level lvl, PathAgent fallback) {
 		super(lvl);
+		this.fallback = fallback;
 	}
-	
-	
+
+
 	/**
-	 * A ghost agent computes the straight path from the start to the goal in 10 equal
-	 * steps.
+	 * A ghost agent takes the straight path from the start to the goal when nothing blocks it
+	 * and otherwise asks its fallback agent.
 	 */
 	public List<Point> findPath() {
-		
-		
-		
+
 		assert start != null;
 		assert goal != null;
-		
-		// this.setEstimator(new ManhattenDistance(goal));  // ignored by this agent
-		
-		path = new LinkedList<Point>();
-		
-		double dx = goal.x - start.x; 
-		dx = dx / 10;
-		
-		double dy = goal.y - start.y;
-		dy = dy / 10;
-		
-			
-		double x = start.x;
-		double y = start.y;
-		for (int i = 0; i<10; i++ ) {
-			x = x + dx;
-			y = y + dy;
-			
-			path.add(new Point((int)Math.round(x), (int)Math.round(y)));
+
+		path = null;
+		straight = false;
+
+		Grid grid = level.grid();
+		int from = grid.cellOf(start);
+		int to = grid.cellOf(goal);
+
+		if (onGrid(grid, from, start) && onGrid(grid, to, goal)) {
+			int[] line = Neighbors.line(grid, from, to, allDirection);
+			if (line != null) {
+				int index = beginCellSearch(start.x, start.y);
+				for (int i = 1; i < line.length; i++) {
+					index = cellReached(grid.x(line[i]), grid.y(line[i]), i, index);
+				}
+				endSearch();
+
+				straight = true;
+				path = PathResult.ofCells(grid, line);
+				return this.getPath();
+			}
 		}
-		
-		return this.getPath();
+
+		return handOff(fallback);
+	}
+
+
+	private static boolean onGrid(Grid grid, int cell, Point p) {
+		return cell >= 0 && grid.x(cell) == p.x && grid.y(cell) == p.y;
 	}
-	
-	
+
+
+	/**
+	 * @return true if the last path is the straight line, false if the fallback agent found it
+	 */
+	public boolean isStraight() {
+		return straight;
+	}
+
+	public PathAgent getFallback() {
+		return fallback;
+	}
+
+
 	/**
 	 * We supply a string label to show up on the user interface.
 	 */
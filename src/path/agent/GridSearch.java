@@ -0,0 +1,226 @@
+package path.agent;
+
+import java.nio.IntBuffer;
+
+import path.level.Grid;
+
+
+/**
+ * A reusable A* over the cells of one Grid, with integer costs (10 per straight move, 14 per
+ * diagonal) and the matching octile or Manhattan estimate.  The search can be confined to a set
+ * of allowed cells, which is how a coarse path is turned into a corridor for a fine search.
+ * <p>
+ * All state lives in a SearchArena indexed by cell and reused from search to search.  The arena
+ * is off heap when the grid is (see Level.setOffHeap), so a search over a huge level adds
+ * nothing to the heap beyond its open list.
+ * <p>
+ * A Listener passed to search is told about every cell expanded and reached, which is how an
+ * agent records the search tree and streams its events.
+ */
+public class GridSearch {
+
+	private final Grid grid;
+
+	private boolean allDirection;
+
+	/*
+	 * The arena's columns.  A cell's g and parent are only meaningful when its SEEN entry equals
+	 * the current search id; it is closed when its CLOSED entry does.
+	 */
+	private static final int G = 0, PARENT = 1, SEEN = 2, CLOSED = 3, ALLOWED = 4, TAG = 5, DEPTH = 6;
+
+	private final SearchArena arena;
+	private final IntBuffer g;
+	private final IntBuffer parent;
+	private final IntBuffer seen;
+	private final IntBuffer closed;
+	private final IntBuffer tag;
+	private final IntBuffer depth;
+	private int searchId = 0;
+
+	private final IntBuffer allowed;      // cell is allowed when its entry == allowId
+	private int allowId = 0;
+	private boolean restricted = false;
+
+	private final IntHeap open = new IntHeap();
+
+	private int expansions;
+
+
+	/**
+	 * Told about a search as it runs.  Every cell carries a tag: the start's is passed to
+	 * search, and any other cell's is the one reached returned for it.
+	 */
+	public interface Listener {
+
+		/**
+		 * The cell was taken off the open list and expanded.
+		 */
+		void expanded(int cell);
+
+		/**
+		 * The cell was reached (or reached more cheaply) from the parent.
+		 *
+		 * @param depth the number of moves from the start
+		 * @param parentTag the parent's tag
+		 * @return the cell's tag
+		 */
+		int reached(int cell, int depth, int parentTag);
+	}
+
+
+	/**
+	 * A search with its own arena, off heap if the grid is.
+	 */
+	public GridSearch(Grid grid) {
+		this(grid, new SearchArena(grid.size(), DEPTH + 1, grid.isOffHeap()));
+	}
+
+	/**
+	 * A search using the given arena, which must have a column for every cell of the grid and
+	 * at least seven columns.  Searches sharing an arena must not run at the same time.
+	 */
+	public GridSearch(Grid grid, SearchArena arena) {
+		if (arena.cells() < grid.size()) throw new IllegalArgumentException("arena too small for the grid");
+		this.grid = grid;
+		this.arena = arena;
+		g = arena.column(G);
+		parent = arena.column(PARENT);
+		seen = arena.column(SEEN);
+		closed = arena.column(CLOSED);
+		allowed = arena.column(ALLOWED);
+		tag = arena.column(TAG);
+		depth = arena.column(DEPTH);
+	}
+
+
+	/**
+	 * Starts a new set of allowed cells; until clearRestriction is called only cells passed
+	 * to allow may be entered.
+	 */
+	public void restrict() {
+		allowId = arena.nextId(ALLOWED);
+		restricted = true;
+	}
+
+	/**
+	 * Adds a cell to the allowed set.
+	 */
+	public void allow(int cell) {
+		allowed.put(cell, allowId);
+	}
+
+	/**
+	 * Allows every open cell again.
+	 */
+	public void clearRestriction() {
+		restricted = false;
+	}
+
+
+	/**
+	 * @return the cells from start to goal inclusive along a cheapest route, or null if there
+	 * is none (within the allowed cells)
+	 */
+	public int[] search(int from, int to) {
+		return search(from, to, null, -1);
+	}
+
+
+	/**
+	 * Like search(from, to), telling the listener about each cell expanded and reached.
+	 *
+	 * @param listener told about the search, or null
+	 * @param startTag the start's tag, passed to the listener for the start's children
+	 */
+	public int[] search(int from, int to, Listener listener, int startTag) {
+
+		searchId = arena.nextId(SEEN);
+		if (searchId == 1) {
+			for (int c = 0; c < arena.cells(); c++) closed.put(c, 0);    // ids restarted
+		}
+		open.clear();
+		expansions = 0;
+
+		seen.put(from, searchId);
+		g.put(from, 0);
+		parent.put(from, -1);
+		tag.put(from, startTag);
+		depth.put(from, 0);
+		open.push(from, estimate(from, to));
+
+		while (!open.isEmpty()) {
+			int c = open.pop();
+			if (closed.get(c) == searchId) continue;
+
+			if (c == to) return route(to);
+
+			closed.put(c, searchId);
+			expansions++;
+			if (listener != null) listener.expanded(c);
+
+			int gc = g.get(c);
+			for (int m = Neighbors.moves(grid, c, allDirection); m != 0; m &= m - 1) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int n = grid.neighbor(c, d);
+				if (restricted && allowed.get(n) != allowId) continue;
+
+				int gn = gc + Neighbors.cost(d);
+				if (seen.get(n) == searchId && (closed.get(n) == searchId || g.get(n) <= gn)) continue;
+
+				seen.put(n, searchId);
+				g.put(n, gn);
+				parent.put(n, c);
+				if (listener != null) {
+					depth.put(n, depth.get(c) + 1);
+					tag.put(n, listener.reached(n, depth.get(n), tag.get(c)));
+				}
+				open.push(n, gn + estimate(n, to));
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * The cost of a route ignoring obstacles, which never overestimates.
+	 */
+	private int estimate(int cell, int to) {
+		int dx = Math.abs(grid.col(cell) - grid.col(to));
+		int dy = Math.abs(grid.row(cell) - grid.row(to));
+		if (!allDirection) return DijkstraAgent.STRAIGHT_COST * (dx + dy);
+		return DijkstraAgent.STRAIGHT_COST * Math.max(dx, dy)
+				+ (DijkstraAgent.DIAGONAL_COST - DijkstraAgent.STRAIGHT_COST) * Math.min(dx, dy);
+	}
+
+
+	private int[] route(int to) {
+		int length = 0;
+		for (int c = to; c >= 0; c = parent.get(c)) length++;
+
+		int[] cells = new int[length];
+		for (int c = to, i = length - 1; c >= 0; c = parent.get(c), i--) cells[i] = c;
+		return cells;
+	}
+
+
+	public SearchArena getArena() {
+		return arena;
+	}
+
+	public Grid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * @return the number of cells expanded by the last search
+	 */
+	public int getExpansions() {
+		return expansions;
+	}
+
+	public void setAllDirection(boolean allDirection) {
+		this.allDirection = allDirection;
+	}
+
+}
@@ -0,0 +1,88 @@
+package path.agent;
+
+import java.util.Arrays;
+
+
+/**
+ * A binary min-heap of int values ordered by int keys, kept in two primitive arrays so the
+ * search loops that use it do not box or allocate.  Ties come out in no particular order.
+ */
+public class IntHeap {
+
+	private int[] values;
+	private int[] keys;
+	private int size;
+
+
+	public IntHeap() {
+		this(64);
+	}
+
+	public IntHeap(int capacity) {
+		values = new int[Math.max(1, capacity)];
+		keys = new int[values.length];
+	}
+
+
+	public void push(int value, int key) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (keys[up] <= key) break;
+			values[i] = values[up];
+			keys[i] = keys[up];
+			i = up;
+		}
+		values[i] = value;
+		keys[i] = key;
+	}
+
+
+	/**
+	 * Removes the value with the smallest key.  The heap must not be empty.
+	 */
+	public int pop() {
+		int top = values[0];
+		int value = values[--size];
+		int key = keys[size];
+
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) break;
+			if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+			if (key <= keys[child]) break;
+			values[i] = values[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		values[i] = value;
+		keys[i] = key;
+		return top;
+	}
+
+
+	/**
+	 * @return the smallest key; the heap must not be empty
+	 */
+	public int peekKey() {
+		return keys[0];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+}
@@ -0,0 +1,115 @@
+package path.agent;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import path.level.Grid;
+
+
+/**
+ * Heuristic values learned by real-time search, one primitive table per (grid, goal,
+ * connectivity).  Each table starts out as the octile (or Manhattan) distance and only ever
+ * grows as agents discover that cells are further from the goal than they look.  Tables are
+ * shared, so every agent heading for the same goal on the same grid benefits from what the
+ * others learned; snapshots of a level share its grid and so its tables.
+ * <p>
+ * A table costs an int per cell, so only the tables of the most recently used goals of the
+ * most recently used grids are kept; a goal that drops out starts afresh if it comes back.
+ * Learned values hold for one version of the level only (removing an obstacle can make a cell
+ * nearer to the goal), and an edited level has new grids, so its old tables simply age out.
+ * <p>
+ * Values are in tenths of a stride, like the DijkstraAgent costs.  Concurrent agents may update
+ * a table at the same time; a lost update only means a value is learned again later.
+ */
+public class LearnedHeuristic {
+	
+	private static final int GRIDS = 4;		// grids whose tables are kept
+	
+	private static final int GOALS_PER_GRID = 16;	// tables kept per grid
+	
+	/*
+	 * The tables by grid (by identity, as grids do not define equals) and then by goal and
+	 * connectivity, each map in least recently used order.
+	 */
+	private static final Map<Grid, Map<Long, LearnedHeuristic>> TABLES = lru(GRIDS);
+	
+	private final Grid grid;
+	
+	private final int goal;
+	
+	private final boolean allDirection;
+	
+	private final int[] learned;    // -1 until a value is learned for the cell
+	
+	
+	private LearnedHeuristic(Grid grid, int goal, boolean allDirection) {
+		this.grid = grid;
+		this.goal = goal;
+		this.allDirection = allDirection;
+		this.learned = new int[grid.size()];
+		Arrays.fill(learned, -1);
+	}
+	
+	
+	/**
+	 * @return the shared table for the grid and goal, created on first use
+	 */
+	public static LearnedHeuristic forGoal(Grid grid, int goal, boolean allDirection) {
+		long key = ((long) goal << 1) | (allDirection ? 1 : 0);
+		synchronized (TABLES) {
+			Map<Long, LearnedHeuristic> perGrid = TABLES.computeIfAbsent(grid, g -> lru(GOALS_PER_GRID));
+			return perGrid.computeIfAbsent(key, k -> new LearnedHeuristic(grid, goal, allDirection));
+		}
+	}
+	
+	
+	private static <K, V> Map<K, V> lru(final int limit) {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > limit;
+			}
+		};
+	}
+	
+	
+	/**
+	 * @return the current estimate from the cell to the goal
+	 */
+	public int h(int cell) {
+		int v = learned[cell];
+		return v >= 0 ? v : base(cell);
+	}
+	
+	
+	/**
+	 * Raises the estimate of a cell (lower values are ignored, estimates never shrink).
+	 */
+	public void learn(int cell, int value) {
+		if (value > h(cell)) learned[cell] = value;
+	}
+	
+	
+	/**
+	 * The distance ignoring obstacles: octile with diagonal moves, Manhattan without.
+	 */
+	private int base(int cell) {
+		int dx = Math.abs(grid.col(cell) - grid.col(goal));
+		int dy = Math.abs(grid.row(cell) - grid.row(goal));
+		if (!allDirection) return DijkstraAgent.STRAIGHT_COST * (dx + dy);
+		return DijkstraAgent.STRAIGHT_COST * Math.max(dx, dy) 
+				+ (DijkstraAgent.DIAGONAL_COST - DijkstraAgent.STRAIGHT_COST) * Math.min(dx, dy);
+	}
+	
+	
+	/**
+	 * Forget everything learned about the grid.
+	 */
+	public static void forget(Grid grid) {
+		synchronized (TABLES) {
+			TABLES.remove(grid);
+		}
+	}
+
+}
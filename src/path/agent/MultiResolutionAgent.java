@@ -0,0 +1,214 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * Searches at two resolutions.  First a coarse search on a grid whose stride is a multiple of
+ * the level's stride finds the rough route; then the fine search on the level's own grid is
+ * confined to a corridor of cells around that route.  With a coarse factor of 5 the coarse grid
+ * has 25 times fewer cells, and the corridor keeps the fine search from flooding the level
+ * while still threading the fine gaps near obstacles.
+ * <p>
+ * If the coarse search fails (a gap only the fine grid can pass) or the corridor turns out too
+ * narrow, the agent falls back to an unrestricted fine search, so it finds a path whenever one
+ * exists.  The result is not guaranteed optimal.
+ * <p>
+ * The search tree (and event stream) is that of the fine search, rooted at the start; the
+ * coarse search only counts toward the expansions.
+ */
+public class MultiResolutionAgent extends PathAgent {
+
+	private int factor;       // coarse stride = factor * fine stride
+
+	private int radius;       // corridor half width, in coarse cells
+
+	private GridSearch fine;
+
+	private GridSearch coarse;
+
+	private int coarseExpansions;
+
+	private int fineExpansions;
+
+	private final GridSearch.Listener fineListener = new GridSearch.Listener() {   // records the fine search's tree
+
+		@Override
+		public void expanded(int cell) {
+			Grid fg = fine.getGrid();
+			cellExpanded(fg.x(cell), fg.y(cell));
+		}
+
+		@Override
+		public int reached(int cell, int depth, int parentTag) {
+			Grid fg = fine.getGrid();
+			return cellReached(fg.x(cell), fg.y(cell), depth, parentTag);
+		}
+	};
+
+
+	/**
+	 * A coarse stride five times the level's and a corridor one coarse cell wide on each side.
+	 */
+	public MultiResolutionAgent(Level lvl) {
+		this(lvl, 5, 1);
+	}
+
+	public MultiResolutionAgent(Level lvl, int factor, int radius) {
+		super(lvl);
+		if (factor < 2 || radius < 0) throw new IllegalArgumentException("factor must be at least 2 and radius not negative");
+		this.factor = factor;
+		this.radius = radius;
+	}
+
+
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		prepareSearches();
+		Grid fg = fine.getGrid();
+		Grid cg = coarse.getGrid();
+
+		path = null;
+		coarseExpansions = 0;
+		fineExpansions = 0;
+
+		int from = fg.cellOf(start);
+		int to = fg.cellOf(goal);
+		if (from < 0 || to < 0 || !fg.isOpen(from) || !fg.isOpen(to)) {
+			beginCellSearch(start.x, start.y);
+			endSearch();
+			return null;
+		}
+
+		int root = beginCellSearch(fg.x(from), fg.y(from));
+
+		int[] route = null;
+		int cFrom = nearestOpen(cg, start);
+		int cTo = nearestOpen(cg, goal);
+		if (cFrom >= 0 && cTo >= 0) {
+			int[] rough = coarse.search(cFrom, cTo);
+			coarseExpansions = coarse.getExpansions();
+
+			if (rough != null) {
+				fine.restrict();
+				int px = fg.x(from), py = fg.y(from);
+				for (int c : rough) {
+					allowBox(fg, px, py, cg.x(c), cg.y(c), radius * cg.stride());
+					px = cg.x(c);
+					py = cg.y(c);
+				}
+				allowBox(fg, px, py, fg.x(to), fg.y(to), radius * cg.stride());
+
+				route = fine.search(from, to, fineListener, root);
+				fineExpansions = fine.getExpansions();
+				fine.clearRestriction();
+			}
+		}
+
+		if (route == null) {
+			route = fine.search(from, to, fineListener, root);    // no usable corridor; search everywhere
+			fineExpansions += fine.getExpansions();
+		}
+
+		stats.nodesExpanded(coarseExpansions);    // the fine expansions were counted as they happened
+		endSearch();
+
+		if (route != null) {
+			path = PathResult.ofCells(fg, route);
+		}
+		return this.getPath();
+	}
+
+
+	/**
+	 * Allows every fine cell in the box spanned by two points, grown by the margin.
+	 */
+	private void allowBox(Grid fg, int x1, int y1, int x2, int y2, int margin) {
+		int s = fg.stride();
+		int c0 = Math.max(0, (Math.min(x1, x2) - margin) / s);
+		int c1 = Math.min(fg.cols() - 1, (Math.max(x1, x2) + margin) / s);
+		int r0 = Math.max(0, (Math.min(y1, y2) - margin) / s);
+		int r1 = Math.min(fg.rows() - 1, (Math.max(y1, y2) + margin) / s);
+
+		for (int r = r0; r <= r1; r++)
+			for (int c = c0; c <= c1; c++)
+				fine.allow(fg.cell(c, r));
+	}
+
+
+	/**
+	 * @return the open coarse cell closest to the point among the four surrounding it, or -1
+	 */
+	private static int nearestOpen(Grid cg, Point p) {
+		int s = cg.stride();
+		int best = -1;
+		double bestDistance = Double.MAX_VALUE;
+		for (int dc = 0; dc <= 1; dc++) {
+			for (int dr = 0; dr <= 1; dr++) {
+				int c = cg.cell(p.x / s + dc, p.y / s + dr);
+				if (c < 0 || !cg.isOpen(c)) continue;
+
+				double d = p.distance(cg.x(c), cg.y(c));
+				if (d < bestDistance) {
+					bestDistance = d;
+					best = c;
+				}
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * (Re)creates the two searches when the level's grids changed, keeping their arenas when
+	 * the new grids are the same size (an obstacle edit).
+	 */
+	private void prepareSearches() {
+		fine = searchFor(fine, level.grid());
+		coarse = searchFor(coarse, level.grid(level.getStride() * factor));
+		fine.setAllDirection(allDirection);
+		coarse.setAllDirection(allDirection);
+	}
+
+
+	private static GridSearch searchFor(GridSearch old, Grid g) {
+		if (old == null) return new GridSearch(g);
+		if (old.getGrid() == g) return old;
+		SearchArena arena = old.getArena();
+		return (arena.cells() == g.size() && arena.isOffHeap() == g.isOffHeap()) ? new GridSearch(g, arena) : new GridSearch(g);
+	}
+
+
+	/**
+	 * @return cells expanded by the coarse search of the last query
+	 */
+	public int getCoarseExpansions() {
+		return coarseExpansions;
+	}
+
+	/**
+	 * @return cells expanded by the fine search(es) of the last query
+	 */
+	public int getFineExpansions() {
+		return fineExpansions;
+	}
+
+	public int getFactor() {
+		return factor;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Multi-Resolution Agent";
+	}
+
+}
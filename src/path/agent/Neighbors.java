@@ -0,0 +1,187 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * Neighbor generation shared by every agent.  The moves out of a state are a mask with bit
+ * a.ordinal() set for each clear Action, read straight from the level grid (see Grid.moves),
+ * so generating neighbors allocates nothing.  Agents walk a mask with
+ * <pre>
+ *     for (int m = mask; m != 0; m &amp;= m - 1) {
+ *         int d = Integer.numberOfTrailingZeros(m);
+ *         ...
+ *     }
+ * </pre>
+ * which always visits the moves in Action order (N, S, E, W, NW, SE, NE, SW), so ties between
+ * equally good neighbors break the same way on every run.
+ */
+public final class Neighbors {
+
+	/**
+	 * The directions open to a 4 connected agent (N, S, E, W) and to an 8 connected one.
+	 */
+	public static final int FOUR = 0x0f;
+	public static final int EIGHT = 0xff;
+
+	private static final int[] DIRECTION = new int[9];   // direction by (dy + 1) * 3 + dx + 1, -1 for no move
+
+	static {
+		DIRECTION[4] = -1;
+		for (Action a : Action.values()) {
+			DIRECTION[(a.dy() + 1) * 3 + a.dx() + 1] = a.ordinal();
+		}
+	}
+
+
+	private Neighbors() {
+	}
+
+
+	/**
+	 * @return FOUR or EIGHT
+	 */
+	public static int directions(boolean allDirection) {
+		return allDirection ? EIGHT : FOUR;
+	}
+
+
+	/**
+	 * @return the mask of clear moves out of a grid cell
+	 */
+	public static int moves(Grid grid, int cell, boolean allDirection) {
+		return grid.moves(cell) & directions(allDirection);
+	}
+
+
+	/**
+	 * The mask of clear moves out of any state.  Way points read the level grid's mask; other
+	 * points sweep each move on the spot.
+	 */
+	public static int moves(Level level, Point p, boolean allDirection) {
+		int allowed = directions(allDirection);
+
+		Grid grid = level.grid();
+		int cell = grid.cellOf(p);
+		if (cell >= 0 && grid.x(cell) == p.x && grid.y(cell) == p.y) {
+			return grid.moves(cell) & allowed;
+		}
+
+		int mask = 0;
+		for (int m = allowed; m != 0; m &= m - 1) {
+			int d = Integer.numberOfTrailingZeros(m);
+			if (level.isClear(p, step(level, p, d))) mask |= 1 << d;
+		}
+		return mask;
+	}
+
+
+	/**
+	 * @return the state one stride away from p in direction d
+	 */
+	public static Point step(Level level, Point p, int d) {
+		Action a = Action.of(d);
+		int s = level.getStride();
+		return new Point(p.x + a.dx() * s, p.y + a.dy() * s);
+	}
+
+
+	/**
+	 * @param dx the column change, -1, 0 or 1
+	 * @param dy the row change, -1, 0 or 1
+	 * @return the direction (Action ordinal) moving by (dx, dy), or -1 for no move
+	 */
+	public static int direction(int dx, int dy) {
+		return DIRECTION[(dy + 1) * 3 + dx + 1];
+	}
+
+
+	/**
+	 * Tests line of sight between two cells by walking the supercover of the segment joining
+	 * them: every cell the segment touches, including both cells beside a corner it passes
+	 * exactly through.  Every cell must be open and every step a clear move.
+	 * <p>
+	 * The walk steps along one axis at a time, so the cells form a 4 connected path whose length
+	 * is the Manhattan distance.  For an 8 connected agent each straight step followed by a step
+	 * along the other axis becomes a diagonal move where that is clear, which brings the path
+	 * down to the octile distance.  Either way, when the line is clear the path is a shortest
+	 * one.
+	 *
+	 * @return the cells from start to goal inclusive, or null if the line is blocked
+	 */
+	public static int[] line(Grid grid, int from, int to, boolean allDirection) {
+		int c0 = grid.col(from), r0 = grid.row(from);
+		int dx = Math.abs(grid.col(to) - c0), dy = Math.abs(grid.row(to) - r0);
+		int sx = Integer.signum(grid.col(to) - c0), sy = Integer.signum(grid.row(to) - r0);
+		int east = direction(sx, 0), south = direction(0, sy);
+
+		int[] cells = new int[dx + dy + 1];
+		int n = 0;
+		int c = from;
+		cells[n++] = c;
+		if (!grid.isOpen(c)) return null;
+
+		for (int ix = 0, iy = 0; ix < dx || iy < dy; ) {
+			// the segment leaves the cell through its side or its top/bottom, whichever it meets first
+			long side = (long) (1 + 2 * ix) * dy - (long) (1 + 2 * iy) * dx;
+			if (side == 0) {
+				// exactly through a corner: both cells beside it are touched
+				int beside = grid.neighbor(c, 0, sy);
+				if (beside < 0 || !grid.isOpen(beside)) return null;
+				c = step(grid, c, east);
+				if (c < 0) return null;
+				cells[n++] = c;
+				c = step(grid, c, south);
+				if (c < 0) return null;
+				cells[n++] = c;
+				ix++;
+				iy++;
+			}
+			else {
+				c = step(grid, c, side < 0 ? east : south);
+				if (c < 0) return null;
+				cells[n++] = c;
+				if (side < 0) ix++;
+				else iy++;
+			}
+		}
+
+		if (!allDirection) return cells;
+
+		// cut the corners: a straight step then a step along the other axis become one diagonal
+		int kept = 1;
+		for (int i = 1; i < n; i++) {
+			int prev = cells[kept - 1];
+			if (i + 1 < n && grid.col(cells[i + 1]) != grid.col(prev) && grid.row(cells[i + 1]) != grid.row(prev)) {
+				int d = direction(sx, sy);
+				if ((grid.moves(prev) & (1 << d)) != 0) {
+					cells[kept++] = cells[++i];
+					continue;
+				}
+			}
+			cells[kept++] = cells[i];
+		}
+		return kept == n ? cells : Arrays.copyOf(cells, kept);
+	}
+
+
+	/**
+	 * @return the cell one clear move in direction d from c, or -1 if the move is blocked
+	 */
+	private static int step(Grid grid, int c, int d) {
+		return (grid.moves(c) & (1 << d)) != 0 ? grid.neighbor(c, d) : -1;
+	}
+
+
+	/**
+	 * @return the integer cost of a move in direction d (see DijkstraAgent.STRAIGHT_COST)
+	 */
+	public static int cost(int d) {
+		return d >= 4 ? DijkstraAgent.DIAGONAL_COST : DijkstraAgent.STRAIGHT_COST;
+	}
+
+}
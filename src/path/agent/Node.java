@@ -1,6 +1,5 @@
 package path.agent;
 import java.awt.Point;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -10,8 +9,9 @@ import java.util.Objects;
  * are dealing with a planning agent, the state is encoded as a navigation point.  An position
  * in the level.
  * <p>
- * Every search tree node is born with an empty list of children which can be expanded as the 
- * tree node is tested/expanded during the search.
+ * Every search tree node is born without a list of children.  The agent creates the list when it
+ * adds the first child while the node is expanded, and only if it keeps the full tree (see
+ * TreeRetention).
  */
 public class Node implements Comparable<Node> {
 	
@@ -22,13 +22,17 @@ public class Node implements Comparable<Node> {
 	
 	private double fval = 0.0;	// estimate journey cost through this node
 	
+	private long key;	// position in an open list, smaller first (see TieBreaking)
+	
 	private int depth;  	// depth of node in search tree
 	
 	private Action actionFromParent;   // what action did we take to get here (from parent)
 	
 	private Node parent;	// handle on parent node from 
 	
-	private List<Node> children = new LinkedList<Node>();
+	private List<Node> children;	// null until the first child is added
+	
+	private int index = -1;		// position in the agent's CompactTree; -1 when not recorded there
 	
 
 	
@@ -56,20 +60,16 @@ public class Node implements Comparable<Node> {
 
 	/**
 	 * A node must be a comparable to have a natural ordering in the priority queue
-	 * based fringe.  The search tree nodes are ordered by fval.  We add a small fudge
-	 * factor so that if two node are essential the same (within +/- epsilon) the starts
-	 * are considered "equal".
+	 * based fringe.  The search tree nodes are ordered by fval, exactly: an ordering that
+	 * treated nearly equal values as equal would not be transitive, which breaks the contract
+	 * of java's ordering collections.  Searches that want ties broken a particular way order
+	 * by the key instead (see TieBreaking).
 	 * <p>
 	 * Having this method enables our nodes to participate in java's ordering collections.
 	 */
 	@Override
 	public int compareTo(Node o) {
-		
-		final double epsilon = 0.01;
-		
-		if (this.fval < (o.fval-epsilon)) return -1;
-		if (this.fval > (o.fval+epsilon)) return 1;
-		return 0;
+		return Double.compare(this.fval, o.fval);
 	}
 	
 	
@@ -126,6 +126,14 @@ public class Node implements Comparable<Node> {
 		this.children = children;
 	}
 
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
 
 
 	/**
@@ -169,7 +177,14 @@ public class Node implements Comparable<Node> {
 
 
 
-	
+	public long getKey() {
+		return key;
+	}
 
 
+
+	public void setKey(long key) {
+		this.key = key;
+	}
+
 }
@@ -1,9 +1,14 @@
 package path.agent;
 
 import java.awt.Point;
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import path.agent.heuristic.Heuristic;
 import path.level.Level;
@@ -16,7 +21,8 @@ import path.level.Level;
  * results in a path and a search tree rooted at root.
  * <p>
  * After an agent plans, we will retain the tree rooted by the root handle and the path so we can
- * interrogate the agent about the results of search.
+ * interrogate the agent about the results of search.  How much of the tree is retained is governed
+ * by the agent's TreeRetention policy (FULL by default).
  * <p>
  * NOTE:  The programmer must clear/reset the agent to return to initial configuration/before planning.
  * 
@@ -29,12 +35,20 @@ public abstract class PathAgent {
 	
 	protected Point goal;	 // ending point established by operator
 
-	protected List<Point> path = null;   // a path resulting from planning; null means path not available
+	protected PathResult path = null;   // a path resulting from planning; null means path not available
 
 	protected Node root;   // a handle on the resulting search tree after planning.  null means no plan yet.
 	
 	protected boolean allDirection; // handle on state of connected actions combo box in MainFrame
 
+	protected TreeRetention retention = TreeRetention.FULL;   // how much of the tree survives the search
+
+	protected final CompactTree compactTree = new CompactTree();   // the tree when retention is COMPACT
+
+	protected final SearchStats stats = new SearchStats();   // metrics kept up to date while searching
+
+	protected SearchEventStream events;   // optional observer of the search as it runs; null means nobody listens
+
 
 	/**
 	 * All agents are born with a knowledge of the current level...for convenience.  May not
@@ -62,7 +76,10 @@ public abstract class PathAgent {
 		this.goal = goal;
 	}
 
-	public List<Point> getPath() {
+	/**
+	 * @return the path found by the last search, or null if there is none
+	 */
+	public PathResult getPath() {
 		return path;
 	}
 	
@@ -77,6 +94,223 @@ public abstract class PathAgent {
 	public abstract List<Point> findPath();
 	
 	
+	/**
+	 * Finds a path from the start to whichever of several goals is cheapest to reach.  The goal
+	 * reached becomes the agent's goal and the path its path; if none can be reached the goal is
+	 * left as it was.
+	 * <p>
+	 * This version searches once per goal, so the search tree and stats are those of the last
+	 * search, and compares the paths found as findAll does.  Agents that can search for all the
+	 * goals at once override it.
+	 * 
+	 * @param goals the candidate goals
+	 * @return the path to the nearest goal, or null if none can be reached
+	 */
+	public PathResult findNearest(Collection<Point> goals) {
+		findAll(new ArrayList<>(goals));
+		return path;
+	}
+
+
+	/**
+	 * Finds a path from the start to each of several goals.  Afterwards the agent's goal and path
+	 * are those of the nearest goal reached (as for findNearest), or the goal is left as it was
+	 * if none was reached.
+	 * <p>
+	 * This version searches once per goal; agents that can sweep once for all goals override it.
+	 * It takes the nearest goal to be the one with the shortest path (PathResult.cost), since an
+	 * agent's own costs are not known here.  Overrides compare their own costs instead, e.g. the
+	 * DijkstraAgent's 10 and 14 per move, so between two goals whose paths are nearly the same
+	 * length the two may pick differently.
+	 * 
+	 * @param goals the goals
+	 * @return the path to each goal in the same order, null for a goal that cannot be reached
+	 */
+	public List<PathResult> findAll(List<Point> goals) {
+		List<PathResult> paths = new ArrayList<>(goals.size());
+		PathResult nearest = null;
+		Point nearestGoal = null;
+		Point original = goal;
+		for (Point g : goals) {
+			clearPath();
+			goal = g;
+			findPath();
+			paths.add(path);
+			if (path != null && (nearest == null || path.cost() < nearest.cost())) {
+				nearest = path;
+				nearestGoal = g;
+			}
+		}
+		path = nearest;
+		goal = nearestGoal != null ? nearestGoal : original;
+		return paths;
+	}
+
+
+	/**
+	 * Concrete agents call this once the start node is created.  The start node becomes the
+	 * root of the search tree and any attached event stream is restarted.
+	 * 
+	 * @param startNode the root of the new search tree
+	 */
+	protected void beginSearch(Node startNode) {
+		root = startNode;
+		
+		compactTree.clear();
+		if (retention == TreeRetention.COMPACT) {
+			startNode.setIndex(compactTree.add(startNode.getState().x, startNode.getState().y, -1));
+		}
+		
+		stats.reset();
+		stats.nodeAdded(startNode.getDepth());
+
+		if (events != null) {
+			events.begin();
+			events.emit(SearchEventStream.FRONTIER, startNode.getState().x, startNode.getState().y);
+		}
+	}
+
+
+	/**
+	 * Concrete agents call this when a node is taken off the fringe to generate its successors.
+	 * 
+	 * @param node the node being expanded
+	 */
+	protected void nodeExpanded(Node node) {
+		stats.nodeExpanded();
+		
+		if (events != null) {
+			events.emit(SearchEventStream.EXPANDED, node.getState().x, node.getState().y);
+		}
+	}
+
+
+	/**
+	 * Concrete agents call this when a newly generated node joins the search tree (and the fringe).
+	 * 
+	 * @param parent the node being expanded
+	 * @param child the successor added beneath it
+	 */
+	protected void nodeReached(Node parent, Node child) {
+		switch (retention) {
+			case FULL:
+				if (parent.getChildren() == null) {
+					parent.setChildren(new LinkedList<>());
+				}
+				parent.getChildren().add(child);
+				break;
+			case COMPACT:
+				child.setIndex(compactTree.add(child.getState().x, child.getState().y, parent.getIndex()));
+				break;
+			case NONE:
+				break;
+		}
+		
+		stats.nodeAdded(child.getDepth());
+
+		if (events != null) {
+			events.emit(SearchEventStream.FRONTIER, child.getState().x, child.getState().y);
+		}
+	}
+
+
+	/**
+	 * Primitive counterpart of beginSearch for agents that search over grid cells instead of
+	 * building Node objects.  Such agents have no root; unless the retention policy is NONE 
+	 * their tree is recorded in the compact tree.
+	 * 
+	 * @param x the start state
+	 * @param y
+	 * @return the start's index in the compact tree, or -1 when the tree is not retained
+	 */
+	protected int beginCellSearch(int x, int y) {
+		root = null;
+		compactTree.clear();
+		
+		stats.reset();
+		stats.nodeAdded(0);
+		
+		if (events != null) {
+			events.begin();
+			events.emit(SearchEventStream.FRONTIER, x, y);
+		}
+		return retention == TreeRetention.NONE ? -1 : compactTree.add(x, y, -1);
+	}
+
+
+	/**
+	 * Primitive counterpart of nodeExpanded.
+	 */
+	protected void cellExpanded(int x, int y) {
+		stats.nodeExpanded();
+		
+		if (events != null) {
+			events.emit(SearchEventStream.EXPANDED, x, y);
+		}
+	}
+
+
+	/**
+	 * Primitive counterpart of nodeReached.
+	 * 
+	 * @param x the state reached
+	 * @param y
+	 * @param depth its depth in the search tree
+	 * @param parentIndex the compact tree index of its parent (as returned for the parent)
+	 * @return its own index in the compact tree, or -1 when the tree is not retained
+	 */
+	protected int cellReached(int x, int y, int depth, int parentIndex) {
+		stats.nodeAdded(depth);
+		
+		if (events != null) {
+			events.emit(SearchEventStream.FRONTIER, x, y);
+		}
+		return retention == TreeRetention.NONE ? -1 : compactTree.add(x, y, parentIndex);
+	}
+
+
+	/**
+	 * Concrete agents call this when the search stops, whether or not a path was found.
+	 */
+	protected void endSearch() {
+		stats.finish();
+		
+		if (retention != TreeRetention.FULL) {
+			root = null;    // the path (and compact tree) is all we keep
+		}
+		
+		if (events != null) {
+			events.finish();
+		}
+	}
+
+
+	/**
+	 * For agents that pass a query on to another agent: runs it there, configured like this
+	 * agent, and takes over its path, search tree and stats.
+	 * 
+	 * @param inner the agent doing the search
+	 * @return the path it found, or null
+	 */
+	protected PathResult handOff(PathAgent inner) {
+		inner.setLevel(level);
+		inner.setAllDirection(allDirection);
+		inner.setRetention(retention);
+		inner.setEventStream(events);
+		inner.clearPath();
+		inner.setStart(start);
+		inner.setGoal(goal);
+
+		inner.findPath();
+
+		root = inner.getRoot();
+		stats.copy(inner.getSearchStats());
+		compactTree.copy(inner.getCompactTree());
+		path = inner.getPath();
+		return path;
+	}
+
+
 	/**
 	 * Walks back up the search tree from the specified search node providing the list
 	 * of states (ie, way points) that will be traveled along this path.  NOTE: this is not
@@ -85,18 +319,9 @@ public abstract class PathAgent {
 	 * @param current the current node (presumably the goal node)
 	 * @return a list of points to travel to get to the goal from the start of search
 	 */
-	public List<Point> pathFromNode(Node current) {
-
-		List<Point> pth = new LinkedList<>();
-
-		while (current != null) {
-			pth.add(current.getState());
-			current = current.getParent();
-		}
-
-		Collections.reverse(pth);
+	public PathResult pathFromNode(Node current) {
 
-		return pth;
+		return PathResult.ofNode(current); //sized from the node's depth and filled from the goal back, so nothing is reversed
 	}
 
 	
@@ -107,109 +332,189 @@ public abstract class PathAgent {
 	 */
 	public List<Point> searchTreeStates()  {
 		
-		// TODO  complete this algorithm to present a collection of points
-		//       that have been reached by the search or zero if there is no 
-		//       search tree.
+		if (!hasSearchTree()) return null;
 		
-		if(root!=null) { //check if root node is not null
-			List<Point> states = new LinkedList<>(); //initialize a list to store the states of nodes
-
-		    LinkedList<Node> queue = new LinkedList<>(); //initialize a queue to store nodes for BFS
-		    queue.add(root); //add the root node to the queue 
-
-		    while (!queue.isEmpty()) { //continue while there are nodes to process in the queue 
-		        Node current = queue.poll(); //remove and get the front node from the queue 
-
-		        states.add(current.getState()); //add the state of the current node to the states list
-		        //if the current node has children, add them to the queue for processing 
-		        if (current.getChildren() != null) {
-		            queue.addAll(current.getChildren()); //add all children to the queue
-		        }
-		    }
+		List<Point> states = new ArrayList<>(stats.nodeCount()); //sized from the stats gathered during search
+		Iterator<Point> it = searchTreeStateIterator();
+		while (it.hasNext()) {
+			states.add(it.next());
+		}
+		return states;
+	}
+	
+	
+	/**
+	 * Lazily visits the states of the search tree in breadth first order (in generation order
+	 * for a compact tree, which is kept instead of a root when the agent searches over cells 
+	 * or the retention policy is COMPACT).  Nothing is copied up front; the iterator only holds the nodes of the 
+	 * level it is currently walking.
+	 * 
+	 * @return an iterator over the states reached, empty if there is no tree
+	 */
+	public Iterator<Point> searchTreeStateIterator() {
+		
+		if (root == null) {
+			return new Iterator<Point>() {
+				
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < compactTree.size();
+				}
+
+				@Override
+				public Point next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					
+					Point p = new Point(compactTree.x(next), compactTree.y(next));
+					next++;
+					return p;
+				}
+			};
+		}
+		
+		final ArrayDeque<Node> queue = new ArrayDeque<>();
+		queue.add(root);
+		
+		return new Iterator<Point>() {
 
-		    return states; //return the list of states after all nodes have been processed
+			@Override
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
 
+			@Override
+			public Point next() {
+				Node current = queue.poll();
+				if (current == null) throw new NoSuchElementException();
+				
+				if (current.getChildren() != null) {
+					queue.addAll(current.getChildren());
+				}
+				return current.getState();
+			}
+		};
+	}
+	
+	
+	/**
+	 * Exports the states of the search tree as packed coordinates {x0, y0, x1, y1, ...} in
+	 * breadth first order, without creating any intermediate objects.
+	 * 
+	 * @return the packed coordinates or null if there is no tree
+	 */
+	public int[] searchTreeStateArray() {
+		
+		if (!hasSearchTree()) return null;
+		
+		if (root == null) {
+			int[] xy = new int[2 * compactTree.size()];
+			for (int i = 0; i < compactTree.size(); i++) {
+				xy[2 * i] = compactTree.x(i);
+				xy[2 * i + 1] = compactTree.y(i);
+			}
+			return xy;
 		}
 		
+		int[] xy = new int[2 * stats.nodeCount()];
+		int n = 0;
 		
-		return null; 
+		Iterator<Point> it = searchTreeStateIterator();
+		while (it.hasNext() && n < xy.length) {
+			Point p = it.next();
+			xy[n++] = p.x;
+			xy[n++] = p.y;
+		}
+		return n == xy.length ? xy : Arrays.copyOf(xy, n);
 	}
 
 	
 	/**
 	 * Returns the depth of the search tree or -1 if the tree
-	 * does not exist.
+	 * does not exist.  The depth is tracked during the search so this
+	 * costs nothing.
 	 * 
 	 * @return the depth of the tree
 	 */
 	public int searchTreeDepth() {
 		
-		if(root !=null) { //if root is not null run helper function
-			return myhelper(root);
-		}
-		
-		return -1; //root is null so it returns -1
+		return stats.maxDepth(); //-1 when there was no search
 	}
 
 	/**
-	 *Helper method used by searchTreeDepth, that performs a BSF to look through all the nodes
+	 * Finds the depth of the subtree below a node, 0 for a leaf.  Walks the subtree with an
+	 * explicit stack so very deep trees cannot overflow the call stack.
 	 * @param myNode
 	 * @return the depth of the search tree
 	 */
 	public int myhelper(Node myNode) {
-		//if the node has no children return 0 (leaf node)
-		if(myNode.getChildren()== null || myNode.getChildren().isEmpty()) {
-			return 0;
-		}
-		int depth = 0; //initialize depth as 0, this stores max depth found
 		
-		//loop through all children of the current node
-		for(Node children: myNode.getChildren()) {
-			int childDepth = myhelper(children); //recursively calculate the depth of the child
-			if(childDepth>depth) { //if child's depth is greater than the current max depth
-				depth = childDepth; //update the depth of the child's depth
+		int deepest = myNode.getDepth(); //depth (from the root) of the deepest node seen so far
+		
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(myNode);
+		
+		while (!stack.isEmpty()) {
+			Node current = stack.pop();
+			deepest = Math.max(deepest, current.getDepth());
+			
+			if (current.getChildren() != null) {
+				for (Node child : current.getChildren()) {
+					stack.push(child);
+				}
 			}
 		}
-		return depth+1; //return the depth of the current node which is max depth of its children + 1
+		return deepest - myNode.getDepth();
 	}
 	
 	/**
-	 * Calls getHeight() if the root is not null, returns -1 if root is null
+	 * Returns the height of the search tree, -1 if root is null.  Like the depth, the
+	 * height is tracked during the search.
 	 * @return the height of the tree and -1 if root is null
 	 */
 	public int searchTreeHeight() {
-	    if (root != null) { //if root is not null run getHeight function
-	        return getHeight(root);
-	    }
-	    return -1; //root is null so return -1
+	    return stats.maxDepth(); //-1 when there was no search
 	}
 
 	/**
-	 * Helper method that performs a BSF through the tree and returns the height of the tree starting at a certain node
+	 * Returns the height of the tree starting at a certain node, without recursion
 	 * @param node
-	 * @return the height of the tree from the current node
+	 * @return the height of the tree from the current node, -1 for no node
 	 */
 	public int getHeight(Node node) {
 	    if (node == null) { //if node is null, return -1
 	        return -1; 
 	    }
-	    
-	    //if the node has no children, the heigh is 0 (leaf nodes)
-	    if (node.getChildren() == null || node.getChildren().isEmpty()) {
-	        return 0;
-	    }
-	    
-	    int maxChildHeight = -1; //initialize the max child height to -1 since no children are processed yet
-	    
-	    //loop through all children of the current node to determine the max height
-	    for (Node child : node.getChildren()) {
-	        int childHeight = getHeight(child); //recursively get the height of the child
-	        maxChildHeight = Math.max(maxChildHeight, childHeight); //update the max height if needed
-	    }
-	    
-	    return maxChildHeight+1; //add 1 to the max child height to account for the current node's height
+	    return myhelper(node);
+	}
+	
+	/**
+	 * @return true if the retained tree (full or compact) can be interrogated
+	 */
+	public boolean hasSearchTree() {
+		return root != null || compactTree.size() > 0;
+	}
+	
+	/**
+	 * @return metrics gathered during the most recent search
+	 */
+	public SearchStats getSearchStats() {
+		return stats;
 	}
 	
+	/**
+	 * The moves an agent may make from a state, as a mask with bit a.ordinal() set for each
+	 * clear Action (only N, S, E and W unless allDirection).  See Neighbors.
+	 * 
+	 * @param current a state
+	 * @return the mask of clear moves
+	 */
+	protected int clearMoves(Point current) {
+		return Neighbors.moves(level, current, allDirection);
+	}
+	
+	
 	/**
 	 * Returns to a pre-search state in which no path is known and
 	 * no search tree exists.
@@ -218,6 +523,8 @@ public abstract class PathAgent {
 		
 		this.root = null;
 		this.path = null;
+		this.stats.reset();
+		this.compactTree.clear();
 		
 	}
 
@@ -232,6 +539,39 @@ public abstract class PathAgent {
 	public Node getRoot() {
 		return root;
 	}
+
+	/**
+	 * @return the primitive tree recorded when retention is COMPACT (empty otherwise)
+	 */
+	public CompactTree getCompactTree() {
+		return compactTree;
+	}
+
+	public TreeRetention getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Choose how much of the search tree to keep after planning.  Takes effect at the
+	 * next search.
+	 * @param retention
+	 */
+	public void setRetention(TreeRetention retention) {
+		this.retention = retention;
+	}
+	
+	public SearchEventStream getEventStream() {
+		return events;
+	}
+
+	/**
+	 * Attach a stream to watch the search as it runs (or null to stop watching).  Attaching a
+	 * stream does not change the result of the search.
+	 * @param events
+	 */
+	public void setEventStream(SearchEventStream events) {
+		this.events = events;
+	}
 	
 	/**
 	 * Gets the state of the combo box from the main frame and sets allDirection
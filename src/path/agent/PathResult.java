@@ -0,0 +1,313 @@
+package path.agent;
+
+import java.awt.Point;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import path.level.Grid;
+
+
+/**
+ * The path found by an agent: its way points packed as coordinates {x0, y0, x1, y1, ...} in one
+ * int array, the same layout as PathAgent.searchTreeStateArray.  The length and cost are known
+ * without walking the path, and nothing else is allocated per way point.
+ * <p>
+ * A path result is an immutable List&lt;Point&gt; so callers written for lists keep working;
+ * each get creates a fresh Point view of a way point.  Hot callers read x(i) and y(i) instead.
+ * <p>
+ * A path serializes straight into a ByteBuffer (see writeTo).  When every step is a single
+ * stride move, as on the way point grid, it is written as the start plus one Action ordinal per
+ * step; otherwise as the flat coordinates.
+ */
+public final class PathResult extends AbstractList<Point> implements RandomAccess {
+
+	private static final byte POINTS = 0;		// encoded as coordinates
+
+	private static final byte MOVES = 1;		// encoded as a start, a stride and Action ordinals
+
+	public static final int MAX_LENGTH = 1 << 24;	// most way points readFrom accepts
+
+	private final int[] xy;		// packed coordinates, possibly longer than the path (see prefix)
+
+	private final int length;	// number of way points
+
+	private final double cost;	// sum of the distances between consecutive way points
+
+
+	private PathResult(int[] xy, int length) {
+		this.xy = xy;
+		this.length = length;
+
+		double c = 0.0;
+		for (int i = 1; i < length; i++) {
+			long dx = xy[2 * i] - xy[2 * i - 2];
+			long dy = xy[2 * i + 1] - xy[2 * i - 1];
+			c += Math.sqrt(dx * dx + dy * dy);
+		}
+		this.cost = c;
+	}
+
+
+	/**
+	 * @return the given list itself if it is a path result, otherwise a packed copy; null for null
+	 */
+	public static PathResult of(List<Point> points) {
+		if (points == null) return null;
+		if (points instanceof PathResult) return (PathResult) points;
+
+		int[] xy = new int[2 * points.size()];
+		int n = 0;
+		for (Point p : points) {
+			xy[n++] = p.x;
+			xy[n++] = p.y;
+		}
+		return new PathResult(xy, points.size());
+	}
+
+
+	/**
+	 * @param xy packed coordinates {x0, y0, x1, y1, ...}, kept by the result (not copied)
+	 */
+	public static PathResult ofCoordinates(int[] xy) {
+		if ((xy.length & 1) != 0) throw new IllegalArgumentException("odd number of coordinates");
+		return new PathResult(xy, xy.length / 2);
+	}
+
+
+	/**
+	 * @param grid the grid the cells belong to
+	 * @param cells cell ids from the start to the goal
+	 */
+	public static PathResult ofCells(Grid grid, int[] cells) {
+		int[] xy = new int[2 * cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			xy[2 * i] = grid.x(cells[i]);
+			xy[2 * i + 1] = grid.y(cells[i]);
+		}
+		return new PathResult(xy, cells.length);
+	}
+
+
+	/**
+	 * Walks a parent array back from a cell to the root (whose parent is negative).  The path is
+	 * filled in from its end, so it never needs reversing.
+	 *
+	 * @param grid the grid the cells belong to
+	 * @param parent the parent of each cell, indexed by cell id
+	 * @param cell the last cell of the path
+	 */
+	public static PathResult ofParents(Grid grid, int[] parent, int cell) {
+		int n = 0;
+		for (int c = cell; c >= 0; c = parent[c]) n++;
+
+		int[] xy = new int[2 * n];
+		for (int c = cell, i = n - 1; c >= 0; c = parent[c], i--) {
+			xy[2 * i] = grid.x(c);
+			xy[2 * i + 1] = grid.y(c);
+		}
+		return new PathResult(xy, n);
+	}
+
+
+	/**
+	 * Walks back up the search tree from a node.  The node's depth gives the length up front.
+	 *
+	 * @param node the last node of the path (presumably the goal node)
+	 */
+	public static PathResult ofNode(Node node) {
+		int n = node.getDepth() + 1;
+		int[] xy = new int[2 * n];
+		for (int i = n - 1; i >= 0; i--, node = node.getParent()) {
+			xy[2 * i] = node.getState().x;
+			xy[2 * i + 1] = node.getState().y;
+		}
+		return new PathResult(xy, n);
+	}
+
+
+	/**
+	 * @return the number of way points, start and goal included
+	 */
+	@Override
+	public int size() {
+		return length;
+	}
+
+
+	/**
+	 * @return a new Point at the i'th way point
+	 */
+	@Override
+	public Point get(int i) {
+		checkIndex(i);
+		return new Point(xy[2 * i], xy[2 * i + 1]);
+	}
+
+
+	public int x(int i) {
+		checkIndex(i);
+		return xy[2 * i];
+	}
+
+
+	public int y(int i) {
+		checkIndex(i);
+		return xy[2 * i + 1];
+	}
+
+
+	/**
+	 * @return the sum of the distances between consecutive way points
+	 */
+	public double cost() {
+		return cost;
+	}
+
+
+	/**
+	 * @return the way points as packed coordinates {x0, y0, x1, y1, ...}; a new array
+	 */
+	public int[] coordinates() {
+		int[] copy = new int[2 * length];
+		System.arraycopy(xy, 0, copy, 0, copy.length);
+		return copy;
+	}
+
+
+	/**
+	 * @return the first steps of this path (steps + 1 way points), sharing its coordinates
+	 */
+	public PathResult prefix(int steps) {
+		if (steps < 0) throw new IllegalArgumentException("negative step count");
+		if (steps + 1 >= length) return this;
+		return new PathResult(xy, steps + 1);
+	}
+
+
+	/**
+	 * @return the ordinal of the Action taken by the i'th step (from way point i to i + 1), or
+	 * -1 if that step is not a single move of the given stride
+	 */
+	public int move(int i, int stride) {
+		if (i < 0 || i + 1 >= length) throw new IndexOutOfBoundsException("step " + i + " of " + (length - 1));
+		int dx = xy[2 * i + 2] - xy[2 * i];
+		int dy = xy[2 * i + 3] - xy[2 * i + 1];
+		if (stride <= 0 || dx % stride != 0 || dy % stride != 0) return -1;
+
+		dx /= stride;
+		dy /= stride;
+		for (int d = 0; d < 8; d++) {
+			Action a = Action.of(d);
+			if (a.dx() == dx && a.dy() == dy) return d;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * @return the stride of the first step if every step is a single move of that stride,
+	 * otherwise 0
+	 */
+	public int uniformStride() {
+		if (length < 2) return 0;
+		int stride = Math.max(Math.abs(xy[2] - xy[0]), Math.abs(xy[3] - xy[1]));
+		for (int i = 0; i + 1 < length; i++) {
+			if (move(i, stride) < 0) return 0;
+		}
+		return stride;
+	}
+
+
+
+	/*  --------------------------- SERIALIZATION --------------------------------- */
+
+	/**
+	 * @return the number of bytes writeTo will put in a buffer
+	 */
+	public int encodedSize() {
+		if (length == 0) return 4;
+		return uniformStride() > 0 ? 4 + 8 + 1 + 4 + (length - 1) : 4 + 8 + 1 + 8 * (length - 1);
+	}
+
+
+	/**
+	 * Writes the path at the buffer's position: the number of way points, then (unless there
+	 * are none) the start, a form byte and either the stride and one Action ordinal per step or
+	 * the coordinates of the remaining way points.
+	 *
+	 * @throws java.nio.BufferOverflowException if fewer than encodedSize() bytes remain
+	 */
+	public void writeTo(ByteBuffer buf) {
+		buf.putInt(length);
+		if (length == 0) return;
+
+		buf.putInt(xy[0]).putInt(xy[1]);
+		int stride = uniformStride();
+		if (stride > 0) {
+			buf.put(MOVES).putInt(stride);
+			for (int i = 0; i + 1 < length; i++) {
+				buf.put((byte) move(i, stride));
+			}
+		}
+		else {
+			buf.put(POINTS);
+			for (int i = 2; i < 2 * length; i++) {
+				buf.putInt(xy[i]);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads a path written by writeTo, leaving the buffer's position just after it.  The
+	 * length read is checked against MAX_LENGTH and against the bytes remaining before the
+	 * path is allocated, so a corrupt or hostile buffer cannot make it allocate more than the
+	 * buffer itself could describe.
+	 *
+	 * @throws IllegalArgumentException if the bytes are not a path
+	 * @throws BufferUnderflowException if the buffer ends inside the path
+	 */
+	public static PathResult readFrom(ByteBuffer buf) {
+		int n = buf.getInt();
+		if (n < 0 || n > MAX_LENGTH) throw new IllegalArgumentException("bad path length " + n);
+		if (n == 0) return new PathResult(new int[0], 0);
+
+		int x0 = buf.getInt();
+		int y0 = buf.getInt();
+		byte form = buf.get();
+		long needed = form == MOVES ? 4 + (n - 1L) : form == POINTS ? 8 * (n - 1L) : 0;
+		if (buf.remaining() < needed) throw new BufferUnderflowException();
+
+		int[] xy = new int[2 * n];
+		xy[0] = x0;
+		xy[1] = y0;
+		if (form == MOVES) {
+			int stride = buf.getInt();
+			for (int i = 1; i < n; i++) {
+				int d = buf.get();
+				if (d < 0 || d >= 8) throw new IllegalArgumentException("bad move " + d);
+				Action a = Action.of(d);
+				xy[2 * i] = xy[2 * i - 2] + a.dx() * stride;
+				xy[2 * i + 1] = xy[2 * i - 1] + a.dy() * stride;
+			}
+		}
+		else if (form == POINTS) {
+			for (int i = 2; i < 2 * n; i++) {
+				xy[i] = buf.getInt();
+			}
+		}
+		else {
+			throw new IllegalArgumentException("bad path form " + form);
+		}
+		return new PathResult(xy, n);
+	}
+
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= length) throw new IndexOutOfBoundsException("way point " + i + " of " + length);
+	}
+
+}
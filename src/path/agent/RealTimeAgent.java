@@ -0,0 +1,235 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import path.level.Grid;
+import path.level.Level;
+
+
+/**
+ * A real-time agent (Real-Time Adaptive A*).  Each call to findPath does a bounded amount of
+ * work: an A* lookahead of at most K expansions from the current position.  The agent commits
+ * to the first steps toward the most promising frontier cell and learns from the lookahead by
+ * raising the heuristic of every expanded cell to g(best) + h(best) - g(cell).  The learned
+ * values are kept in a LearnedHeuristic table shared per grid and goal, so the next call (by
+ * this or any other agent) starts better informed.
+ * <p>
+ * Unlike the other agents, the path returned is usually only a prefix of a route to the goal.
+ * The caller moves along it, sets the new start and calls again; isComplete() tells when the
+ * path ends at the goal.  Latency per call is bounded by the lookahead, not by the length of
+ * the route.
+ */
+public class RealTimeAgent extends PathAgent {
+
+	private int lookahead;      // most nodes expanded per call
+
+	private int commitSteps;    // most steps returned per call
+
+	private boolean complete;   // true if the last path ends at the goal
+
+	private Grid grid;
+
+	/*
+	 * Lookahead state indexed by cell, reused from call to call.
+	 */
+	private int[] g;
+	private int[] parent;
+	private int[] depth;
+	private int[] treeIndex;
+	private int[] stamp;
+	private int[] expanded;     // cells expanded in this call, in order
+	private int searchId = 0;
+
+	private final IntHeap open = new IntHeap();
+
+
+	/**
+	 * Expands up to 64 nodes and commits to up to 8 steps per call.
+	 */
+	public RealTimeAgent(Level lvl) {
+		this(lvl, 64, 8);
+	}
+
+	/**
+	 * @param lvl the level
+	 * @param lookahead the most nodes expanded per call (K)
+	 * @param commitSteps the most steps returned per call
+	 */
+	public RealTimeAgent(Level lvl, int lookahead, int commitSteps) {
+		super(lvl);
+		if (lookahead < 1 || commitSteps < 1) throw new IllegalArgumentException("lookahead and steps must be positive");
+		this.lookahead = lookahead;
+		this.commitSteps = commitSteps;
+	}
+
+
+	/**
+	 * One bounded lookahead from the start.
+	 *
+	 * @return the next steps from the start (the start first), or null if the goal cannot be
+	 * reached from here
+	 */
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		Grid gr = getGrid();
+		int from = gr.cellOf(start);
+		int to = gr.cellOf(goal);
+		path = null;
+		complete = false;
+		if (from < 0 || to < 0 || !gr.isOpen(from) || !gr.isOpen(to)) return null;
+
+		LearnedHeuristic h = LearnedHeuristic.forGoal(gr, to, allDirection);
+
+		if (++searchId == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			searchId = 1;
+		}
+		open.clear();
+		int expandedCount = 0;
+
+		stamp[from] = searchId;
+		g[from] = 0;
+		parent[from] = -1;
+		depth[from] = 0;
+		treeIndex[from] = beginCellSearch(gr.x(from), gr.y(from));
+		open.push(from, h.h(from));
+
+		int frontier = -1;    // the open cell with the smallest f when we stop
+		while (!open.isEmpty()) {
+			int key = open.peekKey();
+			int c = open.pop();
+			if (g[c] < 0 || key != g[c] + h.h(c)) continue;   // already expanded, or stale
+
+			if (c == to || expandedCount == lookahead) {
+				frontier = c;
+				break;
+			}
+
+			expanded[expandedCount++] = c;
+			g[c] = -1 - g[c];     // mark expanded while keeping the cost (decoded below)
+			cellExpanded(gr.x(c), gr.y(c));
+
+			int gc = -1 - g[c];
+			for (int m = Neighbors.moves(gr, c, allDirection); m != 0; m &= m - 1) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int n = gr.neighbor(c, d);
+
+				int gn = gc + Neighbors.cost(d);
+				if (stamp[n] == searchId && (g[n] < 0 || g[n] <= gn)) continue;
+
+				stamp[n] = searchId;
+				g[n] = gn;
+				parent[n] = c;
+				depth[n] = depth[c] + 1;
+				treeIndex[n] = cellReached(gr.x(n), gr.y(n), depth[n], treeIndex[c]);
+				open.push(n, gn + h.h(n));
+			}
+		}
+
+		if (frontier < 0) {
+			// the lookahead ran dry: every reachable cell was expanded and the goal was not among them
+			for (int i = 0; i < expandedCount; i++) h.learn(expanded[i], Integer.MAX_VALUE / 2);
+			endSearch();
+			return null;
+		}
+
+		// learn: h(u) = g(frontier) + h(frontier) - g(u) for every expanded u
+		int fBest = g[frontier] + h.h(frontier);
+		for (int i = 0; i < expandedCount; i++) {
+			int u = expanded[i];
+			h.learn(u, fBest - (-1 - g[u]));
+		}
+
+		endSearch();
+
+		PathResult pth = PathResult.ofParents(gr, parent, frontier);
+		complete = (frontier == to) && pth.size() <= commitSteps + 1;
+		path = pth.prefix(commitSteps);
+		return this.getPath();
+	}
+
+
+	/**
+	 * @return true if the last path ends at the goal
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+
+	/**
+	 * Convenience for callers that want a whole route: calls findPath repeatedly, moving the
+	 * start along each committed prefix.
+	 *
+	 * @param maxCalls a bound on the number of lookaheads
+	 * @return the route followed, or null if the goal was not reached
+	 */
+	public List<Point> travel(int maxCalls) {
+		Point origin = start;
+		LinkedList<Point> route = new LinkedList<>();
+		route.add(origin);
+
+		try {
+			for (int i = 0; i < maxCalls; i++) {
+				List<Point> step = findPath();
+				if (step == null) return null;
+
+				route.addAll(step.subList(1, step.size()));
+				if (complete) return route;
+
+				start = step.get(step.size() - 1);
+			}
+			return null;
+		}
+		finally {
+			start = origin;
+		}
+	}
+
+
+	/**
+	 * @return the way point grid of the level, picking up a rebuilt grid if the level changed
+	 * (the lookahead arrays are kept when it is the same size)
+	 */
+	public Grid getGrid() {
+		Grid current = level.grid();
+		if (grid != current) {
+			boolean sameSize = grid != null && grid.size() == current.size();
+			grid = current;
+			if (sameSize) return grid;
+
+			int n = grid.size();
+			g = new int[n];
+			parent = new int[n];
+			depth = new int[n];
+			treeIndex = new int[n];
+			stamp = new int[n];
+			expanded = new int[lookahead];
+			searchId = 0;
+		}
+		return grid;
+	}
+
+
+	public int getLookahead() {
+		return lookahead;
+	}
+
+	public int getCommitSteps() {
+		return commitSteps;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Real-Time Agent";
+	}
+
+}
@@ -0,0 +1,160 @@
+package path.agent;
+
+import java.util.Arrays;
+
+
+/**
+ * A space-time reservation table shared by cooperating agents.  Each entry says that a grid
+ * cell is occupied by a particular agent at a particular time step.  Agents that plan later
+ * must route around (or wait for) the reservations made by agents that planned earlier.
+ * <p>
+ * Entries live in an open addressing hash table of primitive arrays keyed by (time, cell).
+ * Clearing the table just advances a generation stamp, so the arrays are reused from one
+ * planning cycle to the next without being refilled.
+ */
+public class ReservationTable {
+
+	private long[] keys;      // (time << 32) | cell
+
+	private int[] owners;     // agent holding the reservation
+
+	private int[] stamps;     // generation in which the slot was written; stale slots are empty
+
+	private int generation = 1;
+
+	private int count;        // live reservations
+
+
+	/**
+	 * @param expected the number of reservations expected per planning cycle
+	 */
+	public ReservationTable(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+		allocate(capacity);
+	}
+
+
+	/**
+	 * Drops every reservation.
+	 */
+	public void clear() {
+		count = 0;
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+
+	/**
+	 * Reserve a cell at a time for an agent.
+	 *
+	 * @return false if another agent already holds that reservation (it is left in place)
+	 */
+	public boolean reserve(int cell, int time, int agent) {
+		if (count * 2 >= keys.length) grow();
+
+		long key = key(cell, time);
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+			if (stamps[i] != generation) {
+				stamps[i] = generation;
+				keys[i] = key;
+				owners[i] = agent;
+				count++;
+				return true;
+			}
+			if (keys[i] == key) {
+				return owners[i] == agent;
+			}
+		}
+	}
+
+
+	/**
+	 * @return the agent holding the cell at the time, or -1 if it is free
+	 */
+	public int owner(int cell, int time) {
+		long key = key(cell, time);
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); stamps[i] == generation; i = (i + 1) & mask) {
+			if (keys[i] == key) return owners[i];
+		}
+		return -1;
+	}
+
+
+	/**
+	 * @return true if the cell is free at the time or already held by the agent
+	 */
+	public boolean isFree(int cell, int time, int agent) {
+		int o = owner(cell, time);
+		return o < 0 || o == agent;
+	}
+
+
+	/**
+	 * Tests whether an agent may move from one cell to another (or wait, if they are the
+	 * same) between time and time+1.  The target must be free at time+1 and no other agent
+	 * may be making the opposite move at the same time (two agents swapping cells).
+	 */
+	public boolean canMove(int from, int to, int time, int agent) {
+		if (!isFree(to, time + 1, agent)) return false;
+		if (from == to) return true;
+
+		int other = owner(to, time);
+		return other < 0 || other == agent || owner(from, time + 1) != other;
+	}
+
+
+	/**
+	 * @return the number of reservations made since the last clear
+	 */
+	public int size() {
+		return count;
+	}
+
+
+	private static long key(int cell, int time) {
+		return ((long) time << 32) | (cell & 0xFFFFFFFFL);
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		owners = new int[capacity];
+		stamps = new int[capacity];
+	}
+
+	/**
+	 * Doubles the table, carrying over only the reservations of the current generation.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldOwners = owners;
+		int[] oldStamps = stamps;
+		int live = generation;
+
+		allocate(keys.length * 2);
+		generation = 1;
+		count = 0;
+
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldStamps[j] != live) continue;
+
+			int i = slot(oldKeys[j], mask);
+			while (stamps[i] == generation) i = (i + 1) & mask;
+
+			stamps[i] = generation;
+			keys[i] = oldKeys[j];
+			owners[i] = oldOwners[j];
+			count++;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package path.agent;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+
+/**
+ * Per cell search state kept in int columns, one int per grid cell each, either on the heap or
+ * off it (direct buffers).  An arena belongs to one grid and is reused from query to query, so a
+ * huge level pays for its search state once instead of per search.
+ * <p>
+ * Off heap, a level with 10^8 cells keeps hundreds of megabytes of mostly idle search state out
+ * of the garbage collector's way: the collector neither copies nor marks direct buffers.  The
+ * memory is released when the arena becomes unreachable.  Direct memory is capped separately
+ * from the heap (-XX:MaxDirectMemorySize, by default the maximum heap size).
+ * <p>
+ * Columns are indexed by cell id; a column holds at most 2^29 cells (2 GB of ints).  Entries
+ * written in earlier searches are not cleared; searches tell current entries apart by stamping
+ * them with an id (see nextId).
+ */
+public class SearchArena {
+
+	/**
+	 * The most cells a column can hold.
+	 */
+	public static final int MAX_CELLS = Integer.MAX_VALUE / Integer.BYTES;
+
+	private final IntBuffer[] columns;
+
+	private final int cells;
+
+	private final boolean offHeap;
+
+	private final int[] ids;     // the last id handed out for each column
+
+
+	/**
+	 * @param cells the number of cells (the grid size)
+	 * @param columns the number of int columns
+	 * @param offHeap true to allocate the columns outside the Java heap
+	 */
+	public SearchArena(int cells, int columns, boolean offHeap) {
+		if (cells < 0 || cells > MAX_CELLS) throw new IllegalArgumentException("too many cells for an arena: " + cells);
+
+		this.cells = cells;
+		this.offHeap = offHeap;
+		this.columns = new IntBuffer[columns];
+		this.ids = new int[columns];
+		for (int i = 0; i < columns; i++) {
+			int bytes = cells * Integer.BYTES;
+			ByteBuffer b = offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+			this.columns[i] = b.order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+	}
+
+
+	/**
+	 * @return the column, indexed by cell id; direct buffers start zeroed
+	 */
+	public IntBuffer column(int i) {
+		return columns[i];
+	}
+
+
+	/**
+	 * Hands out a fresh id for stamping a column, so entries stamped earlier no longer match.
+	 * Ids count up from 1, and keep counting when a new search takes the arena over; when they
+	 * run out the column is zeroed and they start again.
+	 *
+	 * @param column the column to be stamped with the id
+	 * @return the new id, always positive
+	 */
+	public int nextId(int column) {
+		if (++ids[column] == Integer.MAX_VALUE) {
+			IntBuffer stamp = columns[column];
+			for (int c = 0; c < cells; c++) stamp.put(c, 0);
+			ids[column] = 1;
+		}
+		return ids[column];
+	}
+
+
+	public int cells() {
+		return cells;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+}
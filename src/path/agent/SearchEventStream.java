@@ -0,0 +1,236 @@
+package path.agent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * An instance of this class carries node expansion and frontier events from a searching agent
+ * (the producer thread) to an observer such as the GUI (the consumer thread).
+ * <p>
+ * Events are written into fixed size batches of primitive arrays so the search never allocates
+ * per event.  A full batch is handed to the consumer through a lock-free queue.  If the consumer
+ * falls behind by more than a few batches, new batches are dropped rather than making the search
+ * wait, and every event can be sampled (only every n-th event recorded) to thin out the stream.
+ * <p>
+ * NOTE: Exactly one thread may emit into a stream at a time.  Any thread may poll.
+ */
+public class SearchEventStream {
+
+	/**
+	 * A node was removed from the fringe and its successors generated.
+	 */
+	public static final byte EXPANDED = 0;
+
+	/**
+	 * A node was added to the search tree (and to the fringe).
+	 */
+	public static final byte FRONTIER = 1;
+
+
+	/**
+	 * A block of events stored column-wise in primitive arrays.  Consumers must hand a batch
+	 * back with {@link SearchEventStream#recycle(Batch)} once they are done reading it.
+	 */
+	public static final class Batch {
+
+		private final byte[] kinds;
+		private final int[] xs;
+		private final int[] ys;
+		private int size;
+
+		private Batch(int capacity) {
+			kinds = new byte[capacity];
+			xs = new int[capacity];
+			ys = new int[capacity];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte kind(int i) {
+			return kinds[i];
+		}
+
+		public int x(int i) {
+			return xs[i];
+		}
+
+		public int y(int i) {
+			return ys[i];
+		}
+	}
+
+
+	private final int batchSize;     // events per batch
+
+	private final int sampleRate;    // record every sampleRate-th event
+
+	private final int maxPending;    // batches allowed to wait for the consumer before we drop
+
+	private final ConcurrentLinkedQueue<Batch> ready = new ConcurrentLinkedQueue<>();
+
+	private final ConcurrentLinkedQueue<Batch> free = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final long[] counts = new long[2];   // events seen per kind, sampled or not
+
+	private Batch filling;           // the batch the producer is currently writing
+
+	private int countdown;           // events left to skip before the next sample
+
+	private volatile boolean finished = true;
+
+	private volatile long dropped;
+
+
+	/**
+	 * Creates a stream recording every event in batches of 1024, allowing 64 batches to queue.
+	 */
+	public SearchEventStream() {
+		this(1024, 1, 64);
+	}
+
+	/**
+	 * @param batchSize number of events in each batch handed to the consumer
+	 * @param sampleRate record only every sampleRate-th event (1 records all of them)
+	 * @param maxPending number of unconsumed batches tolerated before batches are dropped
+	 */
+	public SearchEventStream(int batchSize, int sampleRate, int maxPending) {
+		if (batchSize < 1 || sampleRate < 1 || maxPending < 1)
+			throw new IllegalArgumentException("stream parameters must be positive");
+
+		this.batchSize = batchSize;
+		this.sampleRate = sampleRate;
+		this.maxPending = maxPending;
+	}
+
+
+	/**
+	 * Called by the agent when a search starts.  Any batches left over from a previous
+	 * search are discarded.
+	 */
+	public void begin() {
+		Batch b;
+		while ((b = ready.poll()) != null) {
+			pending.decrementAndGet();
+			recycle(b);
+		}
+		counts[EXPANDED] = 0;
+		counts[FRONTIER] = 0;
+		countdown = 0;
+		dropped = 0;
+		filling = null;
+		finished = false;
+	}
+
+
+	/**
+	 * Records an event.  This is called from the search loop so it must stay cheap: no locks
+	 * and no allocation once the batch pool is warm.
+	 */
+	public void emit(byte kind, int x, int y) {
+		counts[kind]++;
+
+		if (countdown > 0) {
+			countdown--;
+			return;
+		}
+		countdown = sampleRate - 1;
+
+		if (filling == null) filling = obtain();
+
+		int i = filling.size++;
+		filling.kinds[i] = kind;
+		filling.xs[i] = x;
+		filling.ys[i] = y;
+
+		if (filling.size == batchSize) publish(false);
+	}
+
+
+	/**
+	 * Called by the agent when the search ends, publishing the partially filled batch.
+	 */
+	public void finish() {
+		publish(true);
+		finished = true;
+	}
+
+
+	/**
+	 * @return the next batch of events or null if none are waiting
+	 */
+	public Batch poll() {
+		Batch b = ready.poll();
+		if (b != null) pending.decrementAndGet();
+		return b;
+	}
+
+
+	/**
+	 * Returns a consumed batch to the pool so the producer can reuse it.
+	 */
+	public void recycle(Batch b) {
+		b.size = 0;
+		free.offer(b);
+	}
+
+
+	/**
+	 * @return true once the producer called finish (and before the next begin)
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+
+	/**
+	 * @param kind EXPANDED or FRONTIER
+	 * @return the number of events of that kind emitted during the current search, including
+	 * events skipped by sampling.  Only meaningful after the search finished.
+	 */
+	public long count(byte kind) {
+		return counts[kind];
+	}
+
+
+	/**
+	 * @return the number of batches thrown away because the consumer fell behind
+	 */
+	public long dropped() {
+		return dropped;
+	}
+
+
+	private Batch obtain() {
+		Batch b = free.poll();
+		return b != null ? b : new Batch(batchSize);
+	}
+
+
+	/**
+	 * Hands the filling batch to the consumer.  Unless forced, a batch is dropped instead when
+	 * too many are already waiting.
+	 */
+	private void publish(boolean force) {
+		Batch b = filling;
+		filling = null;
+		if (b == null || b.size == 0) {
+			if (b != null) recycle(b);
+			return;
+		}
+
+		if (!force && pending.get() >= maxPending) {
+			dropped++;
+			recycle(b);
+			return;
+		}
+
+		pending.incrementAndGet();
+		ready.offer(b);
+	}
+
+}
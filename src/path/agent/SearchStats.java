@@ -0,0 +1,140 @@
+package path.agent;
+
+import java.util.Arrays;
+
+
+/**
+ * Metrics about a search tree, kept up to date by the agent while it searches so that
+ * asking for them afterwards never requires walking the tree.
+ * <p>
+ * The agent reports each node added to the tree and each expansion.  The number of children
+ * produced by an expansion is tallied in a branching histogram when the next expansion starts
+ * (or the search finishes).
+ */
+public class SearchStats {
+
+	/**
+	 * The largest branching factor we tally separately; larger ones share the last bucket.
+	 */
+	public static final int MAX_BRANCHING = 8;
+
+	private int nodeCount;      // nodes in the search tree, including the root
+
+	private int maxDepth = -1;  // depth of the deepest node; -1 means no tree
+
+	private int expansions;     // nodes taken off the fringe and expanded
+
+	private int openChildren = -1;   // children of the expansion in progress; -1 means none
+
+	private final int[] branching = new int[MAX_BRANCHING + 1];
+
+
+	/**
+	 * Forget everything, ready for a new search.
+	 */
+	public void reset() {
+		nodeCount = 0;
+		maxDepth = -1;
+		expansions = 0;
+		openChildren = -1;
+		Arrays.fill(branching, 0);
+	}
+
+
+	/**
+	 * Takes over the metrics of another search, for an agent that hands its query to another.
+	 */
+	public void copy(SearchStats other) {
+		nodeCount = other.nodeCount;
+		maxDepth = other.maxDepth;
+		expansions = other.expansions;
+		openChildren = other.openChildren;
+		System.arraycopy(other.branching, 0, branching, 0, branching.length);
+	}
+
+
+	/**
+	 * A node at the given depth joined the tree.
+	 */
+	public void nodeAdded(int depth) {
+		nodeCount++;
+		if (depth > maxDepth) maxDepth = depth;
+		if (openChildren >= 0) openChildren++;
+	}
+
+
+	/**
+	 * A node was taken off the fringe; the nodes added from now on are its children.
+	 */
+	public void nodeExpanded() {
+		closeExpansion();
+		expansions++;
+		openChildren = 0;
+	}
+
+
+	/**
+	 * Several nodes were expanded by an inner search that does not report them one by one.
+	 * They count as expansions but not in the branching histogram.
+	 */
+	public void nodesExpanded(int count) {
+		closeExpansion();
+		expansions += count;
+	}
+
+
+	/**
+	 * The search stopped; tally the last expansion.
+	 */
+	public void finish() {
+		closeExpansion();
+	}
+
+
+	private void closeExpansion() {
+		if (openChildren >= 0) {
+			branching[Math.min(openChildren, MAX_BRANCHING)]++;
+			openChildren = -1;
+		}
+	}
+
+
+
+	/*  --------------------------- GETTERS --------------------------------- */
+
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	public int expansions() {
+		return expansions;
+	}
+
+	/**
+	 * @param children a branching factor between 0 and MAX_BRANCHING
+	 * @return how many expansions produced exactly that many children (MAX_BRANCHING or more
+	 * for the last bucket)
+	 */
+	public int branching(int children) {
+		return branching[children];
+	}
+
+	/**
+	 * @return the mean number of children per expansion, or 0 if nothing was expanded
+	 */
+	public double averageBranching() {
+		return expansions == 0 ? 0.0 : (double) (nodeCount - 1) / expansions;
+	}
+
+
+	@Override
+	public String toString() {
+		return "nodes=" + nodeCount + " depth=" + maxDepth + " expansions=" + expansions
+				+ " branching=" + Arrays.toString(branching);
+	}
+
+}
@@ -0,0 +1,164 @@
+package path.agent;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+import path.level.Level;
+
+
+/**
+ * An any-angle agent searching a SubgoalGraph, the visibility graph of the level's obstacle
+ * corners.  The graph is built once per level (and again after an edit); a query links the
+ * start and goal to the subgoals they see and runs A* with the straight line distance over the
+ * few hundred subgoals instead of the thousands of grid cells.
+ * <p>
+ * The path runs straight from corner to corner, so it is shortest among any-angle paths
+ * (allowing for the one unit clearance at each corner), and its points are generally not way
+ * points on the stride grid.
+ */
+public class SubgoalAgent extends PathAgent {
+
+	private SubgoalGraph graph;
+
+	/*
+	 * Query state over the subgoals, plus the start (index n) and goal (index n + 1).
+	 */
+	private double[] g;
+	private int[] parent;
+	private int[] treeIndex;
+	private int[] depth;
+	private boolean[] closed;
+	private double[] toGoal;     // straight distance to the goal from subgoals that see it, else -1
+
+	private final IntHeap open = new IntHeap();
+
+	private static final double KEY_SCALE = 256.0;   // the open list keys f in 1/256 units
+
+
+	public SubgoalAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	public List<Point> findPath() {
+		assert start != null;
+		assert goal != null;
+
+		path = null;
+		if (!level.isValid(start) || !level.isValid(goal)) return null;
+
+		SubgoalGraph sg = getGraph();
+		int n = sg.size();
+		int s = n, t = n + 1;
+
+		int root = beginCellSearch(start.x, start.y);
+		if (level.isClear(start, goal)) {
+			cellReached(goal.x, goal.y, 1, root);
+			endSearch();
+			path = PathResult.ofCoordinates(new int[] { start.x, start.y, goal.x, goal.y });
+			return this.getPath();
+		}
+
+		prepare(n);
+		for (int i = 0; i < n; i++) {
+			toGoal[i] = level.isClear(sg.point(i), goal) ? sg.point(i).distance(goal) : -1;
+		}
+
+		open.clear();
+		g[s] = 0;
+		parent[s] = -1;
+		depth[s] = 0;
+		treeIndex[s] = root;
+		open.push(s, key(0, start));
+
+		while (!open.isEmpty()) {
+			int u = open.pop();
+			if (closed[u]) continue;
+			closed[u] = true;
+
+			if (u == t) break;
+			Point pu = (u == s) ? start : sg.point(u);
+			cellExpanded(pu.x, pu.y);
+
+			if (u == s) {
+				for (int v = 0; v < n; v++) {
+					if (level.isClear(start, sg.point(v))) relax(u, v, start.distance(sg.point(v)), sg.point(v));
+				}
+			}
+			else {
+				for (int e = sg.firstEdge(u); e < sg.endEdge(u); e++) {
+					int v = sg.target(e);
+					relax(u, v, sg.length(e), sg.point(v));
+				}
+				if (toGoal[u] >= 0) relax(u, t, toGoal[u], goal);
+			}
+		}
+
+		endSearch();
+		if (!closed[t]) return null;
+
+		int[] xy = new int[2 * (depth[t] + 1)];
+		for (int v = t, i = depth[t]; v >= 0; v = parent[v], i--) {
+			Point p = v == t ? goal : v == s ? start : sg.point(v);
+			xy[2 * i] = p.x;
+			xy[2 * i + 1] = p.y;
+		}
+		path = PathResult.ofCoordinates(xy);
+		return this.getPath();
+	}
+
+
+	private void relax(int u, int v, double length, Point pv) {
+		double gv = g[u] + length;
+		if (closed[v] || gv >= g[v]) return;
+
+		g[v] = gv;
+		parent[v] = u;
+		depth[v] = depth[u] + 1;
+		treeIndex[v] = cellReached(pv.x, pv.y, depth[v], treeIndex[u]);
+		open.push(v, key(gv, pv));
+	}
+
+
+	/**
+	 * The open list key of f = g + the straight distance to the goal.
+	 */
+	private int key(double gv, Point p) {
+		return (int) Math.round((gv + p.distance(goal)) * KEY_SCALE);
+	}
+
+
+	private void prepare(int n) {
+		if (g == null || g.length != n + 2) {
+			g = new double[n + 2];
+			parent = new int[n + 2];
+			treeIndex = new int[n + 2];
+			depth = new int[n + 2];
+			closed = new boolean[n + 2];
+			toGoal = new double[n];
+		}
+		Arrays.fill(g, Double.POSITIVE_INFINITY);
+		Arrays.fill(closed, false);
+	}
+
+
+	/**
+	 * @return the subgoal graph of the level, built if the level is new or was edited
+	 */
+	public SubgoalGraph getGraph() {
+		if (graph == null || !graph.isCurrent(level)) {
+			graph = SubgoalGraph.build(level);
+		}
+		return graph;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Subgoal Agent";
+	}
+
+}
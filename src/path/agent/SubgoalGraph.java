@@ -0,0 +1,192 @@
+package path.agent;
+
+import java.awt.Point;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import path.level.Level;
+
+
+/**
+ * A visibility graph over the convex corners of a level's obstacles.  A shortest any-angle
+ * path around polygonal obstacles only ever bends at convex corners, so once the corners that
+ * see each other are joined, a query only has to connect its start and goal to the corners they
+ * see and search this small graph.
+ * <p>
+ * Each subgoal sits one unit out from its corner along the corner's outward bisector, so it is a
+ * valid point and the straight moves between subgoals pass the obstacles instead of grazing
+ * them.  Corners inside other obstacles are dropped.  Curved obstacles are flattened into
+ * polygons first.
+ * <p>
+ * A graph describes one version of a level (see Level.getVersion) and is immutable.
+ */
+public class SubgoalGraph {
+
+	private static final double FLATNESS = 0.5;
+
+	private final Level level;
+
+	private final long version;
+
+	private final Point[] points;
+
+	/*
+	 * Edges in compressed rows: the edges of subgoal i are first[i] .. first[i + 1] - 1, each a
+	 * target subgoal and the straight line length to it.
+	 */
+	private final int[] first;
+	private final int[] targets;
+	private final double[] lengths;
+
+
+	private SubgoalGraph(Level level, long version, Point[] points, int[] first, int[] targets, double[] lengths) {
+		this.level = level;
+		this.version = version;
+		this.points = points;
+		this.first = first;
+		this.targets = targets;
+		this.lengths = lengths;
+	}
+
+
+	/**
+	 * Finds the subgoals of the level and joins every pair that see each other.
+	 */
+	public static SubgoalGraph build(Level level) {
+		long version = level.getVersion();
+
+		Set<Point> corners = new LinkedHashSet<>();
+		for (Shape s : level.obstacles()) {
+			addCorners(s, level, corners);
+		}
+		Point[] points = corners.toArray(new Point[0]);
+		int n = points.length;
+
+		List<List<Integer>> adjacent = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) adjacent.add(new ArrayList<>());
+		int edgeCount = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				if (level.isClear(points[i], points[j])) {
+					adjacent.get(i).add(j);
+					adjacent.get(j).add(i);
+					edgeCount += 2;
+				}
+			}
+		}
+
+		int[] first = new int[n + 1];
+		int[] targets = new int[edgeCount];
+		double[] lengths = new double[edgeCount];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			first[i] = e;
+			for (int j : adjacent.get(i)) {
+				targets[e] = j;
+				lengths[e] = points[i].distance(points[j]);
+				e++;
+			}
+		}
+		first[n] = e;
+
+		return new SubgoalGraph(level, version, points, first, targets, lengths);
+	}
+
+
+	/**
+	 * Adds a subgoal for every convex corner of the shape's outline(s) that lands on a valid point.
+	 */
+	private static void addCorners(Shape s, Level level, Set<Point> corners) {
+		double[] c = new double[6];
+		List<double[]> polygon = new ArrayList<>();
+
+		for (PathIterator it = s.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+			int type = it.currentSegment(c);
+			if (type == PathIterator.SEG_MOVETO && !polygon.isEmpty()) {
+				addPolygonCorners(polygon, level, corners);
+				polygon.clear();
+			}
+			if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+				polygon.add(new double[] { c[0], c[1] });
+			}
+		}
+		addPolygonCorners(polygon, level, corners);
+	}
+
+
+	private static void addPolygonCorners(List<double[]> polygon, Level level, Set<Point> corners) {
+		// a closing vertex repeating the first adds nothing
+		int k = polygon.size();
+		if (k > 1 && polygon.get(0)[0] == polygon.get(k - 1)[0] && polygon.get(0)[1] == polygon.get(k - 1)[1]) k--;
+		if (k < 3) return;
+
+		double area = 0;   // twice the signed area, giving the winding of the outline
+		for (int i = 0; i < k; i++) {
+			double[] a = polygon.get(i), b = polygon.get((i + 1) % k);
+			area += a[0] * b[1] - b[0] * a[1];
+		}
+
+		for (int i = 0; i < k; i++) {
+			double[] a = polygon.get((i + k - 1) % k), v = polygon.get(i), b = polygon.get((i + 1) % k);
+			double turn = (v[0] - a[0]) * (b[1] - v[1]) - (v[1] - a[1]) * (b[0] - v[0]);
+			if (turn * area <= 0) continue;    // straight or concave
+
+			// the outward bisector points away from both edges meeting at the corner
+			double ax = v[0] - a[0], ay = v[1] - a[1], bx = v[0] - b[0], by = v[1] - b[1];
+			double la = Math.hypot(ax, ay), lb = Math.hypot(bx, by);
+			double dx = ax / la + bx / lb, dy = ay / la + by / lb;
+			double ld = Math.hypot(dx, dy);
+			if (ld == 0) continue;
+
+			Point p = new Point((int) Math.round(v[0] + 1.5 * dx / ld), (int) Math.round(v[1] + 1.5 * dy / ld));
+			if (level.isValid(p)) corners.add(p);
+		}
+	}
+
+
+	/**
+	 * @return true if the graph still matches the level (same level object, no edits since)
+	 */
+	public boolean isCurrent(Level lvl) {
+		return lvl == level && lvl.getVersion() == version;
+	}
+
+	/**
+	 * @return the number of subgoals
+	 */
+	public int size() {
+		return points.length;
+	}
+
+	/**
+	 * @return the number of (directed) edges
+	 */
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	public Point point(int i) {
+		return points[i];
+	}
+
+	public int firstEdge(int i) {
+		return first[i];
+	}
+
+	public int endEdge(int i) {
+		return first[i + 1];
+	}
+
+	public int target(int e) {
+		return targets[e];
+	}
+
+	public double length(int e) {
+		return lengths[e];
+	}
+
+}
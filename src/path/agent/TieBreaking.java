@@ -0,0 +1,78 @@
+package path.agent;
+
+import java.awt.Point;
+
+
+/**
+ * How an open list orders nodes of equal f.  On open maps whole plateaus of nodes share the
+ * same f, and without a rule for ties a search expands most of the plateau before reaching
+ * the goal.
+ * <p>
+ * The rule is folded into a single long key: f (to a thousandth) in the high bits and the tie
+ * breaker in the low TIE_BITS bits, so the open list still does one comparison per node.
+ */
+public enum TieBreaking {
+
+	/**
+	 * Ties come out in whatever order the queue likes.
+	 */
+	NONE,
+
+	/**
+	 * Prefer the node with the larger g, i.e. the one further along its path.
+	 */
+	HIGHER_G,
+
+	/**
+	 * Prefer the node pushed most recently (depth first among equals).
+	 */
+	LIFO,
+
+	/**
+	 * Prefer the node closest to the straight line from start to goal, measured by the cross
+	 * product of (node - goal) and (start - goal) in strides.
+	 */
+	CROSS_PRODUCT;
+
+
+	/**
+	 * Bits of the key holding the tie breaker.
+	 */
+	public static final int TIE_BITS = 24;
+
+	private static final long TIE_MAX = (1L << TIE_BITS) - 1;
+
+	private static final double F_SCALE = 1000.0;   // f values closer than this are ties
+
+
+	/**
+	 * @param f the node's f value
+	 * @param g the node's cost so far
+	 * @param state the node's state
+	 * @param start the start of the search
+	 * @param goal the goal of the search
+	 * @param stride the level stride, the unit of the cross product
+	 * @param sequence a number increasing with every push, for LIFO
+	 * @return the open list key, smaller first
+	 */
+	public long key(double f, double g, Point state, Point start, Point goal, int stride, long sequence) {
+		long tie;
+		switch (this) {
+			case HIGHER_G:
+				tie = TIE_MAX - Math.min(TIE_MAX, Math.round(g * 16 / stride));   // g in sixteenths of a stride
+				break;
+			case LIFO:
+				tie = TIE_MAX - Math.min(TIE_MAX, sequence);
+				break;
+			case CROSS_PRODUCT:
+				long dx1 = (state.x - goal.x) / stride, dy1 = (state.y - goal.y) / stride;
+				long dx2 = (start.x - goal.x) / stride, dy2 = (start.y - goal.y) / stride;
+				tie = Math.min(TIE_MAX, Math.abs(dx1 * dy2 - dx2 * dy1));
+				break;
+			default:
+				tie = 0;
+		}
+		return (Math.round(f * F_SCALE) << TIE_BITS) | tie;
+	}
+
+}
@@ -0,0 +1,29 @@
+package path.agent;
+
+
+/**
+ * How much of the search tree an agent keeps once it has planned.  Searching is the same
+ * in every mode; only what we can interrogate afterwards differs.
+ */
+public enum TreeRetention {
+
+	/**
+	 * Keep nothing but the path.  Nodes only point at their parents, so the whole tree can be
+	 * collected as soon as the search ends.  Tree metrics (SearchStats) remain available.
+	 */
+	NONE,
+
+	/**
+	 * Keep the states of the tree and the index of each state's parent in primitive arrays
+	 * (see CompactTree) instead of the node objects and their child lists.
+	 */
+	COMPACT,
+
+	/**
+	 * Keep the full tree of nodes with child lists rooted at root.  Needed to walk the tree
+	 * node by node.  Agents that search over grid cells without Node objects keep a compact
+	 * tree instead.
+	 */
+	FULL;
+
+}
@@ -0,0 +1,56 @@
+package path.agent;
+
+import path.level.Level;
+
+
+/**
+ * A* with an inflated heuristic: nodes are ordered by f = g + epsilon * h.  With epsilon
+ * above 1 the search dives toward the goal and expands far fewer nodes, at the price of a path
+ * that may cost up to epsilon times the optimal one (when the heuristic is admissible).
+ * Epsilon 1 is plain A*.
+ */
+public class WeightedAstarAgent extends AstarAgent {
+
+	protected double epsilon;   // heuristic inflation, at least 1
+
+
+	public WeightedAstarAgent(Level lvl) {
+		this(lvl, 2.0);
+	}
+
+	public WeightedAstarAgent(Level lvl, double epsilon) {
+		super(lvl);
+		setEpsilon(epsilon);
+	}
+
+
+	/**
+	 * @return epsilon times the underlying estimate
+	 */
+	@Override
+	public double getHeuristic(Node myNode) {
+		return epsilon * super.getHeuristic(myNode);
+	}
+
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * @param epsilon the heuristic inflation; the path costs at most epsilon times the optimal
+	 */
+	public void setEpsilon(double epsilon) {
+		if (epsilon < 1.0) throw new IllegalArgumentException("epsilon must be at least 1");
+		this.epsilon = epsilon;
+	}
+
+
+	/**
+	 * We supply a string label to show up on the user interface.
+	 */
+	public String toString() {
+		return "Weighted Astar Agent";
+	}
+
+}
@@ -0,0 +1,22 @@
+package path.agent.heuristic;
+import java.awt.Point;
+
+/**
+ * The straight line distance to the goal.  Admissible for any set of actions.
+ */
+public class EuclideanDistance extends Heuristic {
+	
+	public EuclideanDistance() {
+		super();
+	}
+
+	public EuclideanDistance(Point goal) {
+		super(goal);
+	}
+
+	@Override
+	public double h(Point nodeState) {
+		return nodeState.distance(goalState);
+	}
+	
+}
@@ -0,0 +1,23 @@
+package path.agent.heuristic;
+import java.awt.Point;
+
+/**
+ * The sum of the horizontal and vertical distances to the goal.  Admissible when only the
+ * 4 connected actions are permitted.
+ */
+public class ManhattanDistance extends Heuristic {
+	
+	public ManhattanDistance() {
+		super();
+	}
+
+	public ManhattanDistance(Point goal) {
+		super(goal);
+	}
+
+	@Override
+	public double h(Point nodeState) {
+		return Math.abs(nodeState.x - goalState.x) + Math.abs(nodeState.y - goalState.y);
+	}
+	
+}
@@ -0,0 +1,28 @@
+package path.agent.heuristic;
+import java.awt.Point;
+
+/**
+ * The length of the shortest route to the goal using straight and diagonal moves with no
+ * obstacles: move diagonally until level with the goal, then straight.  Admissible (and
+ * tighter than the straight line distance) when the 8 connected actions are permitted.
+ */
+public class OctileDistance extends Heuristic {
+	
+	private static final double DIAGONAL_EXTRA = Math.sqrt(2.0) - 1.0;
+	
+	public OctileDistance() {
+		super();
+	}
+
+	public OctileDistance(Point goal) {
+		super(goal);
+	}
+
+	@Override
+	public double h(Point nodeState) {
+		int dx = Math.abs(nodeState.x - goalState.x);
+		int dy = Math.abs(nodeState.y - goalState.y);
+		return Math.max(dx, dy) + DIAGONAL_EXTRA * Math.min(dx, dy);
+	}
+	
+}
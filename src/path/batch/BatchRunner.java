@@ -0,0 +1,394 @@
+package path.batch;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import path.PathFinderApp;
+import path.agent.Agents;
+import path.agent.AstarAgent;
+import path.agent.ContractionAgent;
+import path.agent.ContractionHierarchy;
+import path.agent.PathAgent;
+import path.agent.PathResult;
+import path.agent.TieBreaking;
+import path.agent.TreeRetention;
+import path.level.Level;
+import path.level.LevelFile;
+
+/**
+ * A headless entry point that runs one agent over every query of a scenario file and writes a
+ * CSV or JSON row per query: timing, search effort, path cost and suboptimality against the
+ * expected optimal cost.  No display is needed.
+ * <pre>
+ * java path.batch.BatchRunner [options] scenario-file
+ *   --level FILE       level description (default: the demonstration level)
+ *   --agent NAME       agent to run (default: astar)
+ *   --diagonal         allow 8 connected actions
+ *   --ties none|g|lifo|cross  tie breaking of A* agents (default: the agent's own, g)
+ *   --hierarchy FILE   contraction hierarchy for the ch agent, built and saved there if missing
+ *   --threads N        queries solved in parallel (default: 1)
+ *   --format csv|json  output format (default: csv)
+ *   --out FILE         output file (default: standard output)
+ *   --tolerance X      exit with status 1 if any path costs more than (1+X) times its expected cost,
+ *                      or if no path is found for a query with an expected cost
+ * </pre>
+ * Query points are snapped to the stride grid, as the GUI does with mouse clicks.  Each thread
+ * plans with its own agent, since agents keep per search state, while contraction hierarchies
+ * are built (or loaded) once and shared.  Agents keep no
+ * search tree (TreeRetention.NONE); the metrics come from their SearchStats.
+ */
+public class BatchRunner {
+	
+	/**
+	 * Queries handed to a worker thread at a time.
+	 */
+	private static final int CHUNK = 256;
+	
+	private Level level = null;
+	
+	private String agentName = "astar";
+	
+	private boolean allDirection = false;
+	
+	private int threads = 1;
+	
+	private TieBreaking tieBreaking = null;   // null leaves the agent's default
+	
+	private ContractionHierarchy hierarchy = null;   // loaded contraction hierarchy, if any
+	
+	
+	/**
+	 * The outcome of one query.
+	 */
+	public static class Result {
+		
+		public final Scenario scenario;
+		public final boolean found;
+		public final int length;          // way points on the path, 0 if none
+		public final double cost;         // summed step distances, or -1 if no path
+		public final int expansions;
+		public final int nodes;
+		public final long nanos;
+		
+		Result(Scenario scenario, PathResult path, int expansions, int nodes, long nanos) {
+			this.scenario = scenario;
+			this.found = path != null;
+			this.length = found ? path.size() : 0;
+			this.cost = found ? path.cost() : -1.0;
+			this.expansions = expansions;
+			this.nodes = nodes;
+			this.nanos = nanos;
+		}
+		
+		/**
+		 * @return cost divided by the expected optimal cost, or NaN if either is unknown
+		 */
+		public double suboptimality() {
+			if (!found || !scenario.hasExpectedCost() || scenario.getExpectedCost() == 0) return Double.NaN;
+			return cost / scenario.getExpectedCost();
+		}
+	}
+	
+	
+	/**
+	 * The tally of a run against the expected costs of its scenarios.
+	 */
+	public static class Summary {
+		
+		public final int queries;
+		public final int unsolved;        // queries without a path
+		public final int missed;          // of those, queries with an expected cost (a path was expected)
+		public final int worse;           // paths beyond the tolerance
+		public final double tolerance;    // allowed suboptimality above 1, or negative for none
+		
+		public Summary(Result[] results, double tolerance) {
+			int unsolved = 0, missed = 0, worse = 0;
+			for (Result r : results) {
+				if (!r.found) {
+					unsolved++;
+					if (r.scenario.hasExpectedCost()) missed++;
+				}
+				else if (tolerance >= 0 && r.suboptimality() > 1.0 + tolerance) worse++;
+			}
+			this.queries = results.length;
+			this.unsolved = unsolved;
+			this.missed = missed;
+			this.worse = worse;
+			this.tolerance = tolerance;
+		}
+		
+		/**
+		 * @return true if a tolerance was given and a path was beyond it or not found where one
+		 * was expected (the worst regression of all)
+		 */
+		public boolean failed() {
+			return tolerance >= 0 && (worse > 0 || missed > 0);
+		}
+	}
+	
+	
+	public BatchRunner(Level level, String agentName, boolean allDirection, int threads) {
+		this.level = level;
+		this.agentName = agentName;
+		this.allDirection = allDirection;
+		this.threads = Math.max(1, threads);
+		
+		Agents.create(agentName, level);   // fail fast on an unknown name
+	}
+	
+	
+	/**
+	 * Solves every query, in parallel if configured to.
+	 * 
+	 * @param scenarios the queries
+	 * @return one result per query, in the same order
+	 */
+	public Result[] run(final List<Scenario> scenarios) throws InterruptedException {
+		
+		final Result[] results = new Result[scenarios.size()];
+		
+		if (threads == 1) {
+			solve(newAgent(), scenarios, 0, scenarios.size(), results);
+			return results;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final ThreadLocal<PathAgent> agents = ThreadLocal.withInitial(this::newAgent);
+		
+		try {
+			List<Future<?>> work = new ArrayList<>();
+			for (int from = 0; from < scenarios.size(); from += CHUNK) {
+				final int lo = from;
+				final int hi = Math.min(from + CHUNK, scenarios.size());
+				work.add(pool.submit(() -> solve(agents.get(), scenarios, lo, hi, results)));
+			}
+			for (Future<?> f : work) {
+				f.get();
+			}
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("query failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Overrides the tie breaking of A* based agents (null keeps their default).
+	 */
+	public void setTieBreaking(TieBreaking tieBreaking) {
+		this.tieBreaking = tieBreaking;
+	}
+	
+	
+	/**
+	 * Makes contraction hierarchy agents answer from a hierarchy loaded once from a file
+	 * instead of building it, building and saving it there first if the file does not exist
+	 * yet.  All worker threads share the one hierarchy.
+	 *
+	 * @throws IllegalArgumentException if the file holds a hierarchy of the other connectivity
+	 */
+	public void setHierarchyFile(Path file) throws IOException {
+		if (file == null) {
+			hierarchy = null;
+			return;
+		}
+		ContractionAgent loader = new ContractionAgent(level.snapshot());
+		loader.setAllDirection(allDirection);
+		if (Files.exists(file)) loader.load(file);
+		else loader.save(file);
+		hierarchy = loader.getHierarchy();
+	}
+	
+	
+	private PathAgent newAgent() {
+		PathAgent agent = Agents.create(agentName, level.snapshot());
+		agent.setAllDirection(allDirection);
+		agent.setRetention(TreeRetention.NONE);
+		if (tieBreaking != null && agent instanceof AstarAgent) {
+			((AstarAgent) agent).setTieBreaking(tieBreaking);
+		}
+		if (hierarchy != null && agent instanceof ContractionAgent) {
+			((ContractionAgent) agent).setHierarchy(hierarchy);
+		}
+		return agent;
+	}
+	
+	
+	private static void solve(PathAgent agent, List<Scenario> scenarios, int from, int to, Result[] results) {
+		for (int i = from; i < to; i++) {
+			Scenario sc = scenarios.get(i);
+			
+			agent.clearPath();
+			agent.setStart(agent.getLevel().snap(sc.getStart()));
+			agent.setGoal(agent.getLevel().snap(sc.getGoal()));
+			
+			long t0 = System.nanoTime();
+			agent.findPath();
+			long t1 = System.nanoTime();
+			PathResult pth = agent.getPath();
+			
+			results[i] = new Result(sc, pth, agent.getSearchStats().expansions(), 
+					agent.getSearchStats().nodeCount(), t1 - t0);
+		}
+	}
+	
+	
+	/*  --------------------------- OUTPUT --------------------------------- */
+	
+	public static void writeCsv(Result[] results, Writer w) {
+		PrintWriter out = new PrintWriter(w);
+		out.println("query,sx,sy,gx,gy,found,length,cost,expected,suboptimality,expansions,nodes,micros");
+		for (int i = 0; i < results.length; i++) {
+			Result r = results[i];
+			Scenario sc = r.scenario;
+			out.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%b,%d,%s,%s,%s,%d,%d,%.1f%n", i,
+					sc.getStart().x, sc.getStart().y, sc.getGoal().x, sc.getGoal().y,
+					r.found, r.length, number(r.cost, r.found), number(sc.getExpectedCost(), sc.hasExpectedCost()),
+					number(r.suboptimality(), !Double.isNaN(r.suboptimality())),
+					r.expansions, r.nodes, r.nanos / 1000.0);
+		}
+		out.flush();
+	}
+	
+	public static void writeJson(Result[] results, Writer w) {
+		PrintWriter out = new PrintWriter(w);
+		out.println("[");
+		for (int i = 0; i < results.length; i++) {
+			Result r = results[i];
+			Scenario sc = r.scenario;
+			out.printf(Locale.ROOT, "  {\"query\":%d,\"start\":[%d,%d],\"goal\":[%d,%d],\"found\":%b,\"length\":%d,"
+					+ "\"cost\":%s,\"expected\":%s,\"suboptimality\":%s,\"expansions\":%d,\"nodes\":%d,\"micros\":%.1f}%s%n",
+					i, sc.getStart().x, sc.getStart().y, sc.getGoal().x, sc.getGoal().y,
+					r.found, r.length, json(r.cost, r.found), json(sc.getExpectedCost(), sc.hasExpectedCost()),
+					json(r.suboptimality(), !Double.isNaN(r.suboptimality())),
+					r.expansions, r.nodes, r.nanos / 1000.0, i + 1 < results.length ? "," : "");
+		}
+		out.println("]");
+		out.flush();
+	}
+	
+	private static String number(double v, boolean known) {
+		return known ? String.format(Locale.ROOT, "%.4f", v) : "";
+	}
+	
+	private static String json(double v, boolean known) {
+		return known ? String.format(Locale.ROOT, "%.4f", v) : "null";
+	}
+	
+	
+	
+	/*  --------------------------- COMMAND LINE --------------------------------- */
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		
+		String levelFile = null;
+		String agent = "astar";
+		boolean diagonal = false;
+		int threads = 1;
+		String format = "csv";
+		String outFile = null;
+		double tolerance = -1;
+		TieBreaking ties = null;
+		String hierarchy = null;
+		String scenarioFile = null;
+		
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "--level":     levelFile = args[++i]; break;
+					case "--agent":     agent = args[++i]; break;
+					case "--diagonal":  diagonal = true; break;
+					case "--threads":   threads = Integer.parseInt(args[++i]); break;
+					case "--format":    format = args[++i]; break;
+					case "--out":       outFile = args[++i]; break;
+					case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+					case "--ties":      ties = tieBreaking(args[++i]); break;
+					case "--hierarchy": hierarchy = args[++i]; break;
+					default:
+						if (args[i].startsWith("--") || scenarioFile != null) usage("unexpected argument " + args[i]);
+						scenarioFile = args[i];
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			usage("bad option value");
+		}
+		if (scenarioFile == null) usage("no scenario file");
+		if (!format.equals("csv") && !format.equals("json")) usage("unknown format " + format);
+		
+		Level lvl = levelFile == null ? PathFinderApp.defaultLevel() : LevelFile.read(Paths.get(levelFile));
+		List<Scenario> scenarios = Scenario.read(Paths.get(scenarioFile));
+		
+		BatchRunner runner;
+		try {
+			runner = new BatchRunner(lvl, agent, diagonal, threads);
+			runner.setTieBreaking(ties);
+			if (hierarchy != null) runner.setHierarchyFile(Paths.get(hierarchy));
+		}
+		catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+			return;
+		}
+		
+		long t0 = System.nanoTime();
+		Result[] results = runner.run(scenarios);
+		long t1 = System.nanoTime();
+		
+		Writer w = outFile == null 
+				? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8);
+		try {
+			if (format.equals("json")) writeJson(results, w);
+			else writeCsv(results, w);
+		}
+		finally {
+			if (outFile != null) w.close();
+		}
+		
+		Summary summary = new Summary(results, tolerance);
+		System.err.printf(Locale.ROOT, "%d queries, %d without a path (%d expected one), %d beyond tolerance, %.1f ms%n",
+				summary.queries, summary.unsolved, summary.missed, summary.worse, (t1 - t0) / 1e6);
+		
+		if (summary.failed()) System.exit(1);
+	}
+	
+	
+	private static TieBreaking tieBreaking(String name) {
+		switch (name) {
+			case "none":  return TieBreaking.NONE;
+			case "g":     return TieBreaking.HIGHER_G;
+			case "lifo":  return TieBreaking.LIFO;
+			case "cross": return TieBreaking.CROSS_PRODUCT;
+			default:
+				usage("unknown tie breaking " + name);
+				return null;
+		}
+	}
+	
+	
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: java path.batch.BatchRunner [--level FILE] [--agent " + String.join("|", Agents.names()) + "]");
+		System.err.println("         [--diagonal] [--threads N] [--format csv|json] [--out FILE] [--tolerance X]");
+		System.err.println("         [--ties none|g|lifo|cross] [--hierarchy FILE] scenario-file");
+		System.exit(2);
+	}
+
+}
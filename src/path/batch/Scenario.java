@@ -0,0 +1,89 @@
+package path.batch;
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One path query in a scenario file: a start, a goal and (optionally) the cost of an optimal
+ * path between them, used to measure how far an agent's answer is from optimal.
+ * <p>
+ * A scenario file has one query per line, <code>sx sy gx gy [optimalCost]</code>.  Blank lines
+ * and lines starting with # are ignored.
+ */
+public class Scenario {
+
+	/**
+	 * The expected cost recorded for queries without one.
+	 */
+	public static final double UNKNOWN_COST = -1.0;
+	
+	private final Point start;
+	
+	private final Point goal;
+	
+	private final double expectedCost;   // cost of an optimal path, or UNKNOWN_COST
+	
+	
+	public Scenario(Point start, Point goal, double expectedCost) {
+		this.start = start;
+		this.goal = goal;
+		this.expectedCost = expectedCost;
+	}
+	
+	
+	/**
+	 * @param file a scenario file
+	 * @return the queries in file order
+	 * @throws IOException if the file cannot be read or a line is malformed
+	 */
+	public static List<Scenario> read(Path file) throws IOException {
+		
+		List<Scenario> scenarios = new ArrayList<>();
+		
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNo = 0;
+			while ((line = in.readLine()) != null) {
+				lineNo++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				
+				String[] f = line.split("[\\s,]+");
+				try {
+					Point s = new Point(Integer.parseInt(f[0]), Integer.parseInt(f[1]));
+					Point g = new Point(Integer.parseInt(f[2]), Integer.parseInt(f[3]));
+					double cost = f.length > 4 ? Double.parseDouble(f[4]) : UNKNOWN_COST;
+					scenarios.add(new Scenario(s, g, cost));
+				}
+				catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					throw new IOException(file + ":" + lineNo + ": malformed query '" + line + "'", e);
+				}
+			}
+		}
+		
+		return scenarios;
+	}
+
+	
+	public Point getStart() {
+		return start;
+	}
+
+	public Point getGoal() {
+		return goal;
+	}
+
+	public double getExpectedCost() {
+		return expectedCost;
+	}
+	
+	public boolean hasExpectedCost() {
+		return expectedCost >= 0;
+	}
+
+}
@@ -12,20 +12,32 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Path2D;
-import java.util.List;
+import java.util.Arrays;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.Border;
 
 import path.PathFinderApp;
+import path.agent.AdaptiveAgent;
+import path.agent.AraStarAgent;
 import path.agent.AstarAgent;
 import path.agent.BreadthFirstSearch;
+import path.agent.ContractionAgent;
+import path.agent.DijkstraAgent;
+import path.agent.FlowFieldAgent;
 import path.agent.GhostAgent;
 import path.agent.GreedyBestFirstAgent;
+import path.agent.MultiResolutionAgent;
 import path.agent.PathAgent;
+import path.agent.RealTimeAgent;
+import path.agent.SubgoalAgent;
+import path.agent.SearchEventStream;
+import path.agent.WeightedAstarAgent;
 import path.level.Level;
 
 /**
@@ -48,13 +60,31 @@ public class MainFrame extends JFrame {
 	
 	private static final long serialVersionUID = 2884588462686235542L;
 
+	/**
+	 * How often (per second) we refresh the level while a search is running.
+	 */
+	private static final int FRAMES_PER_SECOND = 30;
+
 	private Level theLevel;      // the level geometry.
 	
 	private PathAgent theAgent;
 	
 	private Point start;
 	private Point goal;
-	private List<Point> searchStates;
+	
+	/*
+	 * The states reached by the search, accumulated from the agent's event stream as
+	 * the search runs.  Kept as primitive x/y columns; stateCount of them are in use.
+	 */
+	private int[] stateXs = new int[1024];
+	private int[] stateYs = new int[1024];
+	private int stateCount = 0;
+	
+	private final SearchEventStream events = new SearchEventStream();
+	
+	private Timer animation;      // drains the event stream and repaints while searching
+	
+	private boolean searching;    // true while an agent is planning on the worker thread
 	
 	
 	
@@ -94,7 +124,16 @@ public class MainFrame extends JFrame {
 		boxAgent.addItem(new GhostAgent(theLevel));
 		boxAgent.addItem(new BreadthFirstSearch(theLevel));
 		boxAgent.addItem(new AstarAgent(theLevel));
+		boxAgent.addItem(new WeightedAstarAgent(theLevel));
+		boxAgent.addItem(new AraStarAgent(theLevel, 3.0, 0.5, 100000));   // generous limit so the rounds can be watched
 		boxAgent.addItem(new GreedyBestFirstAgent(theLevel));
+		boxAgent.addItem(new DijkstraAgent(theLevel));
+		boxAgent.addItem(new FlowFieldAgent(theLevel));
+		boxAgent.addItem(new RealTimeAgent(theLevel));
+		boxAgent.addItem(new MultiResolutionAgent(theLevel));
+		boxAgent.addItem(new SubgoalAgent(theLevel));
+		boxAgent.addItem(new ContractionAgent(theLevel));   // the level is never edited here, so one hierarchy serves every query
+		boxAgent.addItem(new AdaptiveAgent(theLevel));
 		
 		direction.addItem("4 Connected Actions");
 		direction.addItem("8 Connected Actions");
@@ -199,18 +238,17 @@ public class MainFrame extends JFrame {
 	
 	/**
 	 * This call back method is called when the user clicks on the level panel.  We
-	 * calculate the nearest point exactly on multiples of the STRIDE constant. 
+	 * calculate the nearest point exactly on multiples of the level's stride. 
 	 * @param point
 	 */
 	protected void setStartOrGoal(Point point) {
+		
+		if (searching) return;
 
 		/*
 		 * Calculate the stride point (closet to stride grid).
 		 */
-		int sx = (point.x / PathFinderApp.STRIDE) * PathFinderApp.STRIDE;
-		int sy = (point.y / PathFinderApp.STRIDE) * PathFinderApp.STRIDE;
-		
-		point = new Point(sx,sy);
+		point = theLevel.snap(point);
 		
 		/*
 		 * Sometimes we are clicking for the start state.
@@ -235,6 +273,7 @@ public class MainFrame extends JFrame {
 		if (theAgent != null) {
 			this.theAgent.clearPath();
 		}
+		stateCount = 0;
 		
 		this.repaint();
 	}
@@ -332,24 +371,47 @@ public class MainFrame extends JFrame {
 
 
 	/**
-	 * If searchStates is available, this method will draw the list
-	 * of states that were reached by the search.   This should help
-	 * us understand the complexity of the search performed by the 
-	 * agent.
+	 * This method will draw the states that were reached by the search so far.
+	 * This should help us understand the complexity of the search performed by 
+	 * the agent.
 	 * <p>
-	 * Draws nothing if the searchStates are not available.
+	 * Draws nothing if no states have been reached.
 	 * 
 	 * @param gfx
 	 */
 	private void drawStateLocationsIfPossible(Graphics2D gfx) {
 		
-		if (this.searchStates == null) return;
-		
 		gfx.setColor(Color.yellow);
-		for (Point p : this.searchStates) 
-				gfx.fillOval(p.x-1, p.y-1, 3, 3);
+		for (int i = 0; i < stateCount; i++) 
+				gfx.fillOval(stateXs[i]-1, stateYs[i]-1, 3, 3);
 
 	}
+	
+	
+	/**
+	 * Moves every batch waiting in the event stream into our state columns.  Runs on
+	 * the event dispatch thread so painting never races with it.
+	 */
+	private void drainEvents() {
+		
+		SearchEventStream.Batch batch;
+		while ((batch = events.poll()) != null) {
+			
+			for (int i = 0; i < batch.size(); i++) {
+				if (batch.kind(i) != SearchEventStream.FRONTIER) continue;
+				
+				if (stateCount == stateXs.length) {
+					stateXs = Arrays.copyOf(stateXs, stateCount * 2);
+					stateYs = Arrays.copyOf(stateYs, stateCount * 2);
+				}
+				stateXs[stateCount] = batch.x(i);
+				stateYs[stateCount] = batch.y(i);
+				stateCount++;
+			}
+			
+			events.recycle(batch);
+		}
+	}
 
 
 
@@ -376,11 +438,15 @@ public class MainFrame extends JFrame {
 	 * assert that all dependencies are satisfied (start and goal are established)
 	 * and then configure the selected agent from the user's combobox with all
 	 * the information needed to perform the search.    
+	 * <p>
+	 * The search runs on a worker thread and streams its progress to us; a 
+	 * swing timer redraws the level at a fixed frame rate until it is done.
 	 */
 	protected void doPlanning() {
 
 		if (start == null) return;
 		if (goal == null) return;
+		if (searching) return;
 		
 		
 		theAgent = (PathAgent) this.boxAgent.getSelectedItem();
@@ -399,29 +465,76 @@ public class MainFrame extends JFrame {
 		theAgent.clearPath();
 		theAgent.setStart(start);
 		theAgent.setGoal(goal);
+		theAgent.setEventStream(events);
+		
+		stateCount = 0;
+		searching = true;
+		btnPlan.setEnabled(false);
 
 		System.err.println("start planning...");
 		
-		theAgent.findPath();
+		final PathAgent agent = theAgent;
 		
+		animation = new Timer(1000 / FRAMES_PER_SECOND, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				drainEvents();
+				repaint();
+			}
+		});
+		animation.start();
 		
-		System.err.println("...back from planning");
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					agent.findPath();
+				}
+				finally {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							planningDone(agent);
+						}
+					});
+				}
+			}
+		}, "path-search");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	
+	/**
+	 * Called on the event dispatch thread once the worker thread's search has returned.
+	 * Stops the animation, picks up the last events and reports the search metrics.
+	 * 
+	 * @param agent the agent that just finished planning
+	 */
+	private void planningDone(PathAgent agent) {
 		
+		animation.stop();
+		drainEvents();
+		searching = false;
+		btnPlan.setEnabled(true);
 		
+		System.err.println("...back from planning");
 		
 
 		/*
 		 * Now output search metrics
 		 */
-		this.searchStates = theAgent.searchTreeStates();
-
-		if (this.searchStates != null) { 
-			System.out.println("Tree Size: "+ this.searchStates.size());
+		if (agent.getSearchStats().nodeCount() > 0) { 
+			System.out.println("Tree Size: "+ agent.getSearchStats().nodeCount());
+			System.out.println("Nodes Expanded: "+ agent.getSearchStats().expansions());
 		}
 
 		// TODO the student will add more (to console or to GUI)
-		System.out.println("Length of Path: " + theAgent.findPath().size());
-		System.out.println("Height of Search Tree: "+theAgent.searchTreeHeight());
+		if (agent.getPath() != null) {
+			System.out.println("Length of Path: " + agent.getPath().size());
+			System.out.printf("Cost of Path: %.2f%n", agent.getPath().cost());
+		}
+		System.out.println("Height of Search Tree: "+agent.searchTreeHeight());
 		
 		this.repaint();
 		
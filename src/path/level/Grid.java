@@ -0,0 +1,312 @@
+package path.level;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+
+
+/**
+ * A discrete view of a level: the way points lying on multiples of a stride, numbered
+ * row by row as cell ids 0 .. size()-1.  Cell (col, row) is the way point
+ * (col * stride, row * stride) and is open when the level says that point is valid.
+ * <p>
+ * Searches that work on cell ids rather than Point objects can keep all of their per state
+ * bookkeeping in primitive arrays indexed by cell id.
+ * <p>
+ * Each cell also holds a move mask: one bit per direction (in the order of path.agent.Action:
+ * N, S, E, W, NW, SE, NE, SW) telling whether the straight segment to that neighbor is clear of
+ * every obstacle.  The masks come from swept segment tests when the grid is built, so a move is
+ * never allowed to clip a thin obstacle or cut a corner, and generating neighbors is a single
+ * byte read.
+ * <p>
+ * The cells live in tiles, bands of TILE_ROWS rows each held in one byte buffer, on the heap
+ * or, for levels set to keep their grids off heap (Level.setOffHeap), in direct buffers outside
+ * it.  A grid never changes once built: after an obstacle edit the level builds a new grid that
+ * shares every tile the edit did not touch with the old one, so an edit copies a few tiles
+ * rather than the whole grid and searches still using the old grid are not disturbed.
+ */
+public class Grid {
+
+	private final int stride;
+
+	private final int cols;
+
+	private final int rows;
+
+	/**
+	 * Rows of cells per tile.
+	 */
+	public static final int TILE_ROWS = 16;
+
+	/*
+	 * Tile t holds the cells t * tileCells .. (t + 1) * tileCells - 1: first a byte per cell
+	 * that is 1 when the cell's way point is valid, then a byte per cell with bit d set when the
+	 * move in direction d is clear.
+	 */
+	private final ByteBuffer[] tiles;
+
+	private final int tileCells;
+
+	private final boolean offHeap;
+
+	/**
+	 * Column and row change of each direction, in the order of path.agent.Action.
+	 */
+	private static final int[] DX = { 0, 0, 1, -1, -1, 1, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0, -1, 1, -1, 1 };
+
+	/**
+	 * The direction with a given (dy + 1) * 3 + (dx + 1), or -1 for no move.
+	 */
+	private static final int[] DIRECTION = { 4, 0, 6, 3, -1, 2, 7, 1, 5 };
+
+
+	/**
+	 * Samples the level at every multiple of the stride inside its boundary.
+	 *
+	 * @param level the level to discretize
+	 * @param stride the distance between neighboring way points
+	 */
+	public Grid(Level level, int stride) {
+		if (stride < 1) throw new IllegalArgumentException("stride must be positive");
+
+		this.stride = stride;
+
+		Rectangle bounds = level.getBoundary().getBounds();
+		this.cols = (bounds.x + bounds.width + stride - 1) / stride;
+		this.rows = (bounds.y + bounds.height + stride - 1) / stride;
+
+		if ((long) cols * rows > Integer.MAX_VALUE / 2) throw new IllegalArgumentException("too many cells at stride " + stride);
+
+		this.offHeap = level.isOffHeap();
+		this.tileCells = TILE_ROWS * cols;
+		this.tiles = new ByteBuffer[(rows + TILE_ROWS - 1) / TILE_ROWS];
+		for (int t = 0; t < tiles.length; t++) {
+			tiles[t] = allocate(2 * tileCells, offHeap);
+		}
+
+		Point p = new Point();
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				p.setLocation(c * stride, r * stride);
+				if (level.isValid(p)) setOpen(r * cols + c, true);
+			}
+		}
+
+		sweepMoves(level.sweepTest());
+	}
+
+
+	/**
+	 * A grid for the level after an edit, sharing the tiles of the grid before it and bringing
+	 * the dirty region up to date in copies of the tiles it covers.  Cells within one stride of
+	 * the region are resampled and every move out of them swept again; no other cell or move can
+	 * have changed, since moves are at most one stride long in each direction.
+	 *
+	 * @param previous the grid before the edit, at the same stride and on the same boundary
+	 * @param level the level after the edit
+	 * @param dirty the region the edit touched
+	 */
+	Grid(Grid previous, Level level, Rectangle dirty) {
+		this.stride = previous.stride;
+		this.cols = previous.cols;
+		this.rows = previous.rows;
+
+		this.offHeap = previous.offHeap;
+		this.tileCells = previous.tileCells;
+		this.tiles = previous.tiles.clone();
+
+		int c0 = Math.max(0, (dirty.x - 1) / stride - 1);
+		int r0 = Math.max(0, (dirty.y - 1) / stride - 1);
+		int c1 = Math.min(cols - 1, (dirty.x + dirty.width) / stride + 1);
+		int r1 = Math.min(rows - 1, (dirty.y + dirty.height) / stride + 1);
+
+		// copy on write: the moves of cells one row beyond the region change too
+		int t0 = Math.max(0, r0 - 1) / TILE_ROWS;
+		int t1 = Math.min(rows - 1, r1 + 1) / TILE_ROWS;
+		for (int t = t0; t <= t1; t++) {
+			ByteBuffer copy = allocate(2 * tileCells, offHeap);
+			copy.put(previous.tiles[t].duplicate().clear());
+			tiles[t] = copy;
+		}
+
+		Point p = new Point();
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				p.setLocation(c * stride, r * stride);
+				setOpen(r * cols + c, level.isValid(p));
+			}
+		}
+
+		SweepTest sweep = level.sweepTest();
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * cols + c;
+				for (int d = 0; d < DX.length; d++) {
+					int n = cell(c + DX[d], r + DY[d]);
+					if (n < 0) continue;
+
+					boolean clear = isOpen(cell) && isOpen(n) && sweep.isClear(x(cell), y(cell), x(n), y(n));
+					setMove(cell, d, clear);
+					setMove(n, d ^ 1, clear);
+				}
+			}
+		}
+	}
+
+
+	private void setMove(int cell, int d, boolean clear) {
+		ByteBuffer tile = tiles[cell / tileCells];
+		int i = tileCells + cell % tileCells;
+		int m = tile.get(i);
+		tile.put(i, (byte) (clear ? m | 1 << d : m & ~(1 << d)));
+	}
+
+
+	private void setOpen(int cell, boolean valid) {
+		tiles[cell / tileCells].put(cell % tileCells, (byte) (valid ? 1 : 0));
+	}
+
+
+	private static ByteBuffer allocate(int size, boolean offHeap) {
+		return offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+
+	/**
+	 * Sets the move bits of every open cell.  Each clear segment sets the bit of both of its
+	 * ends, so only the four directions S, E, SE and SW are swept.
+	 */
+	private void sweepMoves(SweepTest sweep) {
+		int[] forward = { 1, 2, 5, 7 };
+		for (int cell = 0; cell < size(); cell++) {
+			if (!isOpen(cell)) continue;
+
+			for (int d : forward) {
+				int n = cell(col(cell) + DX[d], row(cell) + DY[d]);
+				if (n < 0 || !isOpen(n)) continue;
+
+				if (sweep.isClear(x(cell), y(cell), x(n), y(n))) {
+					setMove(cell, d, true);
+					setMove(n, d ^ 1, true);    // directions come in opposite pairs
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return the cell id of (col, row) or -1 if that lies outside the grid
+	 */
+	public int cell(int col, int row) {
+		if (col < 0 || row < 0 || col >= cols || row >= rows) return -1;
+		return row * cols + col;
+	}
+
+	/**
+	 * @return the cell id of the way point at or just above/left of p, or -1 if outside the grid
+	 */
+	public int cellOf(Point p) {
+		if (p.x < 0 || p.y < 0) return -1;
+		return cell(p.x / stride, p.y / stride);
+	}
+
+	/**
+	 * @return the cell reached from the given cell by moving dx columns and dy rows (each -1,
+	 * 0 or 1), or -1 if that is outside the grid, blocked or the move is not clear
+	 */
+	public int neighbor(int cell, int dx, int dy) {
+		return neighbor(cell, DIRECTION[(dy + 1) * 3 + dx + 1]);
+	}
+
+	/**
+	 * @param direction a move direction, the ordinal of a path.agent.Action
+	 * @return the cell reached by that move, or -1 if the move is not clear
+	 */
+	public int neighbor(int cell, int direction) {
+		if (direction < 0 || (moves(cell) & (1 << direction)) == 0) return -1;
+		return cell + DY[direction] * cols + DX[direction];
+	}
+
+	/**
+	 * @return the move mask of the cell: bit d is set when the move in direction d (the ordinal
+	 * of a path.agent.Action) is clear; 0 for blocked cells
+	 */
+	public int moves(int cell) {
+		return tiles[cell / tileCells].get(tileCells + cell % tileCells) & 0xff;
+	}
+
+	public int col(int cell) {
+		return cell % cols;
+	}
+
+	public int row(int cell) {
+		return cell / cols;
+	}
+
+	/**
+	 * @return the level x coordinate of the cell's way point
+	 */
+	public int x(int cell) {
+		return col(cell) * stride;
+	}
+
+	/**
+	 * @return the level y coordinate of the cell's way point
+	 */
+	public int y(int cell) {
+		return row(cell) * stride;
+	}
+
+	/**
+	 * @return a new Point for the cell's way point
+	 */
+	public Point point(int cell) {
+		return new Point(x(cell), y(cell));
+	}
+
+	public boolean isOpen(int cell) {
+		return tiles[cell / tileCells].get(cell % tileCells) != 0;
+	}
+
+	/**
+	 * @return true if this grid and the other one hold the given tile in the same buffer
+	 * (neither was copied since they parted)
+	 */
+	public boolean sharesTile(Grid other, int tile) {
+		return tiles[tile] == other.tiles[tile];
+	}
+
+	/**
+	 * @return the number of tiles
+	 */
+	public int tileCount() {
+		return tiles.length;
+	}
+
+	/**
+	 * @return true if the cells are stored outside the Java heap
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	public int stride() {
+		return stride;
+	}
+
+	public int cols() {
+		return cols;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of cells (open or not)
+	 */
+	public int size() {
+		return cols * rows;
+	}
+
+}
@@ -1,21 +1,75 @@
 package path.level;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Shape;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import path.PathFinderApp;
 
 /**
  * An instance of this class represents a level in a 2D game and provides the environment in 
  * which our agent will search.
  * <p>
  * Our world has a polygon boundary shape and many obstacles.
+ * <p>
+ * Agents move between way points on multiples of the level's stride.  The grid of way points
+ * at any stride is built on first use and cached (see grid).
+ * <p>
+ * Obstacles are edited only through addZone, removeZone and moveZone.  Each edit bumps the
+ * level's version, patches the cached grids over the region it touched and tells the
+ * LevelListeners about that region.
+ * <p>
+ * Reading a level never takes a lock.  The obstacles, version and grids form an immutable
+ * state; an edit builds the next state (copying only the grid tiles it touches) and swaps it in
+ * with a single volatile write.  A search that must not see edits halfway through plans on a
+ * snapshot(), a frozen level pinned to the state of the moment.
  * 
  */
 public class Level {
 
-	private Shape boundary;
-	private List<Shape> obstacles = new LinkedList<>();
+	private final Shape boundary;
+	
+	private final int stride;	// distance between neighboring way points
+	
+	private volatile State state;   // replaced, never modified, by edits
+	
+	private final boolean frozen;   // true for snapshots, which never change
+	
+	private final Object editLock;   // edits happen one at a time
+	
+	private final List<LevelListener> listeners;
+
+	
+	/**
+	 * One version of a level: its obstacles and the grids derived from them.  Grids at new
+	 * strides may still be added (they follow from the obstacles), nothing else changes.
+	 */
+	private static final class State {
+		
+		final List<Shape> obstacles;   // read only
+		
+		final long version;
+		
+		final boolean offHeap;   // keep grids in direct buffers outside the heap
+		
+		final Map<Integer, Grid> grids = new ConcurrentHashMap<>();   // cached way point grids by stride
+		
+		volatile SweepTest sweepTest;   // flattened outlines for segment tests, built on first use
+		
+		Level view;   // the frozen level showing this state
+		
+		State(List<Shape> obstacles, long version, boolean offHeap) {
+			this.obstacles = Collections.unmodifiableList(obstacles);
+			this.version = version;
+			this.offHeap = offHeap;
+		}
+	}
 
 	
 	/**
@@ -29,15 +83,319 @@ public class Level {
 	 * A newly created level at least has a boundary.
 	 */
 	public Level(Shape bounds) {
-		boundary = bounds;
+		this(bounds, PathFinderApp.STRIDE);
+	}
+	
+	/**
+	 * A level whose agents move the given distance per step.
+	 */
+	public Level(Shape bounds, int stride) {
+		this(bounds, stride, new ArrayList<>(), false);
+	}
+	
+	/**
+	 * A level that starts out with obstacles, for LevelBuilder: its first state is built and
+	 * published once, however many obstacles there are.
+	 * 
+	 * @param obstacles the obstacles, kept by the level (not copied)
+	 */
+	Level(Shape bounds, int stride, List<Shape> obstacles, boolean offHeap) {
+		if (stride < 1) throw new IllegalArgumentException("stride must be positive");
+		this.boundary = bounds;
+		this.stride = stride;
+		this.frozen = false;
+		this.editLock = new Object();
+		this.listeners = new CopyOnWriteArrayList<>();
+		publish(new State(obstacles, 0, offHeap));
+	}
+	
+	/**
+	 * The frozen view of one state of a level.
+	 */
+	private Level(Level live, State state) {
+		this.boundary = live.boundary;
+		this.stride = live.stride;
+		this.frozen = true;
+		this.editLock = live.editLock;
+		this.listeners = Collections.emptyList();
+		this.state = state;
+	}
+	
+	
+	/**
+	 * @return the distance between neighboring way points
+	 */
+	public int getStride() {
+		return this.stride;
+	}
+	
+	
+	/**
+	 * @return the way point grid at the level's own stride
+	 */
+	public Grid grid() {
+		return grid(stride);
+	}
+	
+	
+	/**
+	 * Returns the way point grid at any stride, for example a coarse multiple of the level's
+	 * stride for multi-resolution search.  Grids are cached and kept up to date by the edits.
+	 * 
+	 * @param s the stride of the grid
+	 * @return the cached grid
+	 */
+	public Grid grid(int s) {
+		State st = state;
+		Grid g = st.grids.get(s);
+		if (g == null) {
+			g = st.grids.computeIfAbsent(s, k -> new Grid(st.view, k));
+		}
+		return g;
+	}
+	
+	
+	/**
+	 * @return a level that stays as this level is now, sharing its grids; edits of this level
+	 * do not show in it and it cannot be edited itself
+	 */
+	public Level snapshot() {
+		return state.view;
+	}
+	
+	
+	/**
+	 * @return true if this level is a snapshot (and so never changes)
+	 */
+	public boolean isSnapshot() {
+		return frozen;
+	}
+	
+	
+	/**
+	 * @return true if this level's grids keep their cells outside the Java heap
+	 */
+	public boolean isOffHeap() {
+		return state.offHeap;
+	}
+	
+	
+	/**
+	 * Chooses where grids keep their cells.  Off heap suits huge levels: the cells do not count
+	 * against the heap and the garbage collector never scans them.  Cached grids are dropped
+	 * and rebuilt on next use.
+	 */
+	public void setOffHeap(boolean offHeap) {
+		checkEditable();
+		synchronized (editLock) {
+			State old = state;
+			publish(new State(new ArrayList<>(old.obstacles), old.version, offHeap));
+		}
+	}
+	
+	
+	/**
+	 * Adds an obstacle.
+	 * 
+	 * @return the level's new version
+	 */
+	public long addZone(Shape zone) {
+		return edit(null, zone, false);
+	}
+	
+	
+	/**
+	 * Removes an obstacle, matched by identity: the same Shape object that was added, not an
+	 * equal one (two zones may cover the same rectangle).
+	 * 
+	 * @return the level's new version, or the current one if the zone was not in the level
+	 */
+	public long removeZone(Shape zone) {
+		return edit(zone, null, false);
+	}
+	
+	
+	/**
+	 * Moves an obstacle by replacing it with a translated copy.
+	 * 
+	 * @param zone an obstacle of the level, the very Shape object that was added
+	 * @return the translated obstacle, which takes the old one's place in the level
+	 * @throws IllegalArgumentException if the zone is not an obstacle of the level
+	 */
+	public Shape moveZone(Shape zone, int dx, int dy) {
+		Shape moved;
+		if (zone instanceof Rectangle) {
+			Rectangle r = new Rectangle((Rectangle) zone);
+			r.translate(dx, dy);
+			moved = r;
+		}
+		else {
+			moved = AffineTransform.getTranslateInstance(dx, dy).createTransformedShape(zone);
+		}
+		
+		edit(zone, moved, true);
+		return moved;
+	}
+	
+	
+	/**
+	 * Rebuilds everything derived from the obstacles, for callers that cannot tell what changed.
+	 */
+	public void obstaclesChanged() {
+		checkEditable();
+		long v;
+		synchronized (editLock) {
+			State old = state;
+			State next = new State(new ArrayList<>(old.obstacles), old.version + 1, old.offHeap);
+			publish(next);
+			v = next.version;
+		}
+		notifyListeners(v, boundary.getBounds());
+	}
+	
+	
+	/**
+	 * Replaces one obstacle by another, either of which may be null (an add or a remove), then
+	 * publishes the next state with its grids patched over the region the edit touched.  The
+	 * removed obstacle is looked up under the edit lock, so a concurrent edit cannot remove it
+	 * in between.
+	 * 
+	 * @param required true to throw if the removed obstacle is not in the level, false to
+	 * leave the level as it is
+	 */
+	private long edit(Shape removed, Shape added, boolean required) {
+		checkEditable();
+		long v;
+		Rectangle dirty;
+		synchronized (editLock) {
+			State old = state;
+			List<Shape> obstacles = new ArrayList<>(old.obstacles);
+			if (removed != null) {
+				int i = indexOf(obstacles, removed);
+				if (i < 0 && required) throw new IllegalArgumentException("not an obstacle of this level");
+				if (i < 0) return old.version;
+				if (added != null) obstacles.set(i, added);
+				else obstacles.remove(i);
+				dirty = removed.getBounds();
+				if (added != null) dirty.add(added.getBounds());
+			}
+			else {
+				obstacles.add(added);
+				dirty = added.getBounds();
+			}
+			
+			State next = new State(obstacles, old.version + 1, old.offHeap);
+			next.view = new Level(this, next);
+			for (Map.Entry<Integer, Grid> e : old.grids.entrySet()) {
+				next.grids.put(e.getKey(), new Grid(e.getValue(), next.view, dirty));
+			}
+			state = next;
+			v = next.version;
+		}
+		notifyListeners(v, dirty);
+		return v;
+	}
+	
+	
+	/**
+	 * @return the index of the very obstacle (not merely an equal one), or -1
+	 */
+	private static int indexOf(List<Shape> obstacles, Shape zone) {
+		for (int i = 0; i < obstacles.size(); i++) {
+			if (obstacles.get(i) == zone) return i;
+		}
+		return -1;
+	}
+	
+	
+	private void publish(State next) {
+		if (next.view == null) next.view = new Level(this, next);
+		state = next;
+	}
+	
+	
+	private void notifyListeners(long version, Rectangle dirty) {
+		for (LevelListener l : listeners) {
+			l.levelChanged(this, version, dirty);
+		}
+	}
+	
+	
+	private void checkEditable() {
+		if (frozen) throw new UnsupportedOperationException("a level snapshot cannot be edited");
+	}
+	
+	
+	/**
+	 * @return the number of edits made so far; derived data built at one version is stale
+	 * at any later one
+	 */
+	public long getVersion() {
+		return state.version;
+	}
+	
+	
+	public void addListener(LevelListener listener) {
+		checkEditable();
+		listeners.add(listener);
+	}
+	
+	
+	public void removeListener(LevelListener listener) {
+		listeners.remove(listener);
+	}
+	
+	
+	/**
+	 * Tests whether an agent can move in a straight line between two points: both must be
+	 * valid and the segment joining them must not pass through an obstacle or leave the boundary.
+	 * 
+	 * @return true if the move from a to b is clear
+	 */
+	public boolean isClear(Point a, Point b) {
+		State st = state;
+		if (!isValid(st, a) || !isValid(st, b)) return false;
+		return sweepTest(st).isClear(a.x, a.y, b.x, b.y);
+	}
+	
+	
+	SweepTest sweepTest() {
+		return sweepTest(state);
+	}
+	
+	
+	private SweepTest sweepTest(State st) {
+		SweepTest t = st.sweepTest;
+		if (t == null) {
+			t = new SweepTest(boundary, st.obstacles);
+			st.sweepTest = t;   // a race only builds it twice
+		}
+		return t;
+	}
+	
+	
+	/**
+	 * Snaps a point to the way point at or just above/left of it.
+	 */
+	public Point snap(Point p) {
+		return new Point((p.x / stride) * stride, (p.y / stride) * stride);
 	}
 
 
 	/**
-	 * @return the list of obstacles in our level
+	 * @return the boundary shape of our level
+	 */
+	public Shape getBoundary() {
+		return this.boundary;
+	}
+
+
+	/**
+	 * @return a read only list of the obstacles in our level (edit them with addZone,
+	 * removeZone and moveZone); later edits do not show in the list
 	 */
 	public List<Shape> obstacles() {
-		return this.obstacles;
+		return state.obstacles;
 	}
 
 	
@@ -48,10 +406,15 @@ public class Level {
 	 * @return true if inside the boundary and outside of all obstacles.
 	 */
 	public boolean isValid(Point p) {
+		return isValid(state, p);
+	}
+	
+	
+	private boolean isValid(State st, Point p) {
 
 		if (!boundary.contains(p)) return false;
 		
-		for (Shape s : obstacles) 
+		for (Shape s : st.obstacles) 
 			if (s.contains(p)) return false;
 				
 		return true;
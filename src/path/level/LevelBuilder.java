@@ -2,6 +2,7 @@ package path.level;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -19,6 +20,10 @@ public class LevelBuilder {
 	
 	private int height = PathFinderApp.DEFAULT_FRAME_HEIGHT-FRAME_PADDING;
 	
+	private int stride = PathFinderApp.STRIDE;
+	
+	private boolean offHeap = false;
+	
 	private List<Shape> zones = new LinkedList<>();
 		
 	/*
@@ -28,14 +33,11 @@ public class LevelBuilder {
 	}
 	
 	/**
-	 *  Create and configures a new level.
+	 *  Create and configures a new level.  The level starts at version 0 with all of the zones,
+	 *  published once rather than once per zone.
 	 */
 	public Level build() {
-		
-		Level lvl = new Level(new Rectangle(width,height));
-		lvl.obstacles().clear();
-		lvl.obstacles().addAll(zones);
-		return lvl;
+		return new Level(new Rectangle(width,height), stride, new ArrayList<>(zones), offHeap);
 	}
 	
 	/**
@@ -54,6 +56,30 @@ public class LevelBuilder {
 		
 	}
 	
+	/**
+	 * Sets the distance agents travel per step, ie the spacing of the way point grid.
+	 * 
+	 * @param stride
+	 * @return
+	 */
+	public LevelBuilder stride(int stride) {
+		this.stride = stride;
+		
+		return this;
+	}
+	
+	/**
+	 * Keeps the level's way point grids outside the Java heap, for very large levels.
+	 * 
+	 * @param offHeap
+	 * @return
+	 */
+	public LevelBuilder offHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+		
+		return this;
+	}
+	
 	/**
 	 * Adds a obstacle zone/shape to the world 
 	 * 
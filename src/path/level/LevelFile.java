@@ -0,0 +1,74 @@
+package path.level;
+import java.awt.Rectangle;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads a level from a plain text description, one directive per line:
+ * <pre>
+ * # comments and blank lines are ignored
+ * size 800 800          (boundary width and height)
+ * stride 10             (distance between way points)
+ * offheap               (keep the way point grids outside the Java heap)
+ * zone 0 0 20 300       (a rectangular obstacle: x y width height)
+ * </pre>
+ * Directives are handed to a LevelBuilder in order, so a missing size keeps the builder's default.
+ */
+public class LevelFile {
+	
+	private LevelFile() {
+	}
+
+	
+	/**
+	 * @param file the level description
+	 * @return the level described by the file
+	 * @throws IOException if the file cannot be read or a line is malformed
+	 */
+	public static Level read(Path file) throws IOException {
+		
+		LevelBuilder builder = Level.builder();
+		
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNo = 0;
+			while ((line = in.readLine()) != null) {
+				lineNo++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				
+				String[] f = line.split("\\s+");
+				try {
+					switch (f[0]) {
+						case "size":
+							builder.size(Integer.parseInt(f[1]), Integer.parseInt(f[2]));
+							break;
+						case "stride":
+							int stride = Integer.parseInt(f[1]);
+							if (stride < 1) throw new IOException(file + ":" + lineNo + ": stride must be positive, not " + stride);
+							builder.stride(stride);
+							break;
+						case "offheap":
+							builder.offHeap(true);
+							break;
+						case "zone":
+							builder.addZone(new Rectangle(Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+									Integer.parseInt(f[3]), Integer.parseInt(f[4])));
+							break;
+						default:
+							throw new IOException(file + ":" + lineNo + ": unknown directive '" + f[0] + "'");
+					}
+				}
+				catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					throw new IOException(file + ":" + lineNo + ": malformed line '" + line + "'", e);
+				}
+			}
+		}
+		
+		return builder.build();
+	}
+
+}
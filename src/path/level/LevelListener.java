@@ -0,0 +1,21 @@
+package path.level;
+import java.awt.Rectangle;
+
+
+/**
+ * Told about every edit of a level's obstacles, so a structure derived from the level (a grid,
+ * a distance table, a cache of paths) can update just the part that changed.
+ * <p>
+ * Listeners are called on the thread that made the edit, after the level's own grids have been
+ * brought up to date.
+ */
+public interface LevelListener {
+
+	/**
+	 * @param level the level that changed
+	 * @param version the level's version after the edit
+	 * @param dirty the region (in level coordinates) outside of which nothing changed
+	 */
+	void levelChanged(Level level, long version, Rectangle dirty);
+
+}
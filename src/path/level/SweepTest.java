@@ -0,0 +1,132 @@
+package path.level;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Swept segment tests against the shapes of a level.  The boundary and every obstacle are
+ * flattened once into edge lists, so testing a move costs a few orientation tests per nearby
+ * edge instead of repeated Shape.contains scans.
+ * <p>
+ * A segment whose end points are both valid is clear when it crosses no edge of an obstacle or
+ * of the boundary, and none of its interior sample points (the midpoint and the quarter points)
+ * lies inside an obstacle or outside the boundary.  The samples catch segments that enter a
+ * shape only through its corners, such as a diagonal move across the corner two obstacles share.
+ */
+class SweepTest {
+
+	private static final double FLATNESS = 0.5;     // curves become polylines this close to them
+
+	private final Shape boundary;
+
+	private final double[] boundaryEdges;
+
+	private final List<Shape> obstacles = new ArrayList<>();
+
+	private final List<double[]> obstacleEdges = new ArrayList<>();
+
+	private final List<Rectangle2D> obstacleBounds = new ArrayList<>();
+
+
+	SweepTest(Shape boundary, List<Shape> zones) {
+		this.boundary = boundary;
+		boundaryEdges = edges(boundary);
+		for (Shape s : zones) {
+			obstacles.add(s);
+			obstacleEdges.add(edges(s));
+			obstacleBounds.add(s.getBounds2D());
+		}
+	}
+
+
+	/**
+	 * @return true if the segment between two valid points stays inside the boundary and
+	 * outside every obstacle
+	 */
+	boolean isClear(double x1, double y1, double x2, double y2) {
+		if (crosses(boundaryEdges, x1, y1, x2, y2)) return false;
+		for (int k = 1; k <= 3; k++) {
+			if (!boundary.contains(x1 + (x2 - x1) * k / 4, y1 + (y2 - y1) * k / 4)) return false;
+		}
+
+		double minX = Math.min(x1, x2), minY = Math.min(y1, y2);
+		double maxX = Math.max(x1, x2), maxY = Math.max(y1, y2);
+		for (int i = 0; i < obstacles.size(); i++) {
+			Rectangle2D b = obstacleBounds.get(i);
+			if (b.getMaxX() < minX || b.getMinX() > maxX || b.getMaxY() < minY || b.getMinY() > maxY) continue;
+
+			if (crosses(obstacleEdges.get(i), x1, y1, x2, y2)) return false;
+			Shape s = obstacles.get(i);
+			for (int k = 1; k <= 3; k++) {
+				if (s.contains(x1 + (x2 - x1) * k / 4, y1 + (y2 - y1) * k / 4)) return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * @return true if the segment properly crosses (not merely touches) one of the edges
+	 */
+	private static boolean crosses(double[] edges, double x1, double y1, double x2, double y2) {
+		for (int e = 0; e < edges.length; e += 4) {
+			double ax = edges[e], ay = edges[e + 1], bx = edges[e + 2], by = edges[e + 3];
+
+			double d1 = orient(ax, ay, bx, by, x1, y1);
+			double d2 = orient(ax, ay, bx, by, x2, y2);
+			if (d1 * d2 >= 0) continue;
+
+			double d3 = orient(x1, y1, x2, y2, ax, ay);
+			double d4 = orient(x1, y1, x2, y2, bx, by);
+			if (d3 * d4 < 0) return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * @return the sign of the turn a -> b -> c (positive counter clockwise)
+	 */
+	private static double orient(double ax, double ay, double bx, double by, double cx, double cy) {
+		return Math.signum((bx - ax) * (cy - ay) - (by - ay) * (cx - ax));
+	}
+
+
+	/**
+	 * Flattens a shape's outline into edges packed as x1, y1, x2, y2 quadruples.
+	 */
+	private static double[] edges(Shape s) {
+		List<double[]> list = new ArrayList<>();
+		double[] c = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+
+		for (PathIterator it = s.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+			switch (it.currentSegment(c)) {
+				case PathIterator.SEG_MOVETO:
+					startX = lastX = c[0];
+					startY = lastY = c[1];
+					break;
+				case PathIterator.SEG_LINETO:
+					list.add(new double[] { lastX, lastY, c[0], c[1] });
+					lastX = c[0];
+					lastY = c[1];
+					break;
+				case PathIterator.SEG_CLOSE:
+					list.add(new double[] { lastX, lastY, startX, startY });
+					lastX = startX;
+					lastY = startY;
+					break;
+				default:
+					break;    // a flattening iterator returns no curves
+			}
+		}
+
+		double[] packed = new double[list.size() * 4];
+		for (int i = 0; i < list.size(); i++) System.arraycopy(list.get(i), 0, packed, i * 4, 4);
+		return packed;
+	}
+
+}
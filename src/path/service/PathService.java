@@ -0,0 +1,313 @@
+package path.service;
+import java.awt.Point;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import path.PathFinderApp;
+import path.agent.PathResult;
+import path.level.Level;
+import path.level.LevelFile;
+
+/**
+ * An embedded HTTP service answering path queries against levels loaded once at startup, so
+ * several game server processes on a machine can share one copy of every level.  It binds to
+ * the loopback interface only.
+ * <pre>
+ * GET /path?level=default&amp;agent=astar&amp;diagonal=false&amp;sx=100&amp;sy=100&amp;gx=600&amp;gy=200
+ *     {"found":true,"length":91,"start":[100,100],"moves":"220206..."}
+ * GET /levels     the names of the loaded levels
+ * GET /metrics    counters in "name value" lines
+ * </pre>
+ * A path is encoded as its start plus one digit per step, the ordinal of the Action taken
+ * (N=0, S=1, E=2, W=3, NW=4, SE=5, NE=6, SW=7).  Paths whose steps are not single stride moves
+ * (the subgoal agent's) are sent as a flat "points" array instead.  With format=binary the path is
+ * sent as application/octet-stream in the form written by PathResult.writeTo, or as the single
+ * int -1 when there is no path.
+ * <p>
+ * Queries are solved by a QueryBatcher, which snaps the start and goal to the level's stride
+ * grid first.
+ * <pre>
+ * java path.service.PathService [--port 8080] [--level name=FILE]... [--window MICROS] [--batch N] [--workers N]
+ * </pre>
+ */
+public class PathService {
+	
+	private static final long QUERY_TIMEOUT_SECONDS = 30;
+	
+	private final Map<String, Level> levels;
+	
+	private final QueryBatcher batcher;
+	
+	private final HttpServer server;
+	
+	private final ExecutorService handlers;
+	
+	private final long startedAt = System.nanoTime();
+	
+	
+	/**
+	 * Creates (but does not start) the service.
+	 * 
+	 * @param port the loopback port to listen on (0 picks a free one)
+	 * @param levels the levels by name
+	 * @param batcher the batcher solving the queries
+	 */
+	public PathService(int port, Map<String, Level> levels, QueryBatcher batcher) throws IOException {
+		this.levels = levels;
+		this.batcher = batcher;
+		
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+		this.handlers = Executors.newFixedThreadPool(64);
+		server.setExecutor(handlers);
+		
+		server.createContext("/path", this::handlePath);
+		server.createContext("/levels", this::handleLevels);
+		server.createContext("/metrics", this::handleMetrics);
+	}
+	
+	
+	public void start() {
+		server.start();
+	}
+	
+	public void stop() {
+		server.stop(0);
+		handlers.shutdownNow();
+		batcher.shutdown();
+	}
+	
+	/**
+	 * @return the port actually bound
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	
+	
+	/*  --------------------------- HANDLERS --------------------------------- */
+	
+	private void handlePath(HttpExchange ex) throws IOException {
+		Map<String, String> q = parameters(ex.getRequestURI());
+		
+		QueryBatcher.Query query;
+		try {
+			query = new QueryBatcher.Query(
+					q.getOrDefault("level", "default"),
+					q.getOrDefault("agent", "astar"),
+					Boolean.parseBoolean(q.getOrDefault("diagonal", "false")),
+					new Point(Integer.parseInt(q.get("sx")), Integer.parseInt(q.get("sy"))),
+					new Point(Integer.parseInt(q.get("gx")), Integer.parseInt(q.get("gy"))));
+		}
+		catch (NumberFormatException e) {
+			reply(ex, 400, "{\"error\":\"sx, sy, gx and gy must be integers\"}");
+			return;
+		}
+		
+		try {
+			PathResult pth = batcher.submit(query).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			if ("binary".equals(q.get("format"))) {
+				reply(ex, 200, encodeBinary(pth));
+			}
+			else {
+				reply(ex, 200, encode(pth, levels.get(query.levelName).getStride()));
+			}
+		}
+		catch (ExecutionException e) {
+			reply(ex, 400, "{\"error\":" + quote(String.valueOf(e.getCause().getMessage())) + "}");
+		}
+		catch (TimeoutException e) {
+			reply(ex, 503, "{\"error\":\"timed out\"}");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reply(ex, 503, "{\"error\":\"interrupted\"}");
+		}
+	}
+	
+	private void handleLevels(HttpExchange ex) throws IOException {
+		StringBuilder sb = new StringBuilder("[");
+		for (String name : levels.keySet()) {
+			if (sb.length() > 1) sb.append(',');
+			sb.append(quote(name));
+		}
+		reply(ex, 200, sb.append(']').toString());
+	}
+	
+	private void handleMetrics(HttpExchange ex) throws IOException {
+		long queries = batcher.queries.get();
+		long batches = batcher.batches.get();
+		StringBuilder sb = new StringBuilder();
+		sb.append("uptime_seconds ").append((System.nanoTime() - startedAt) / 1_000_000_000L).append('\n');
+		sb.append("levels ").append(levels.size()).append('\n');
+		sb.append("queries ").append(queries).append('\n');
+		sb.append("batches ").append(batches).append('\n');
+		sb.append("failures ").append(batcher.failures.get()).append('\n');
+		if (batches > 0) {
+			sb.append(String.format(Locale.ROOT, "mean_batch_size %.2f%n", (double) queries / batches));
+		}
+		if (queries > 0) {
+			sb.append(String.format(Locale.ROOT, "mean_wait_micros %.1f%n", batcher.waitNanos.get() / 1000.0 / queries));
+			sb.append(String.format(Locale.ROOT, "mean_solve_micros %.1f%n", batcher.solveNanos.get() / 1000.0 / queries));
+		}
+		reply(ex, 200, sb.toString());
+	}
+	
+	
+	
+	/*  --------------------------- ENCODING --------------------------------- */
+	
+	/**
+	 * Encodes a path compactly: the start and one Action digit per step when every step is a
+	 * single stride move, or a flat list of coordinates otherwise.
+	 */
+	static String encode(PathResult pth, int stride) {
+		if (pth == null) return "{\"found\":false}";
+		
+		StringBuilder sb = new StringBuilder(64 + pth.size());
+		sb.append("{\"found\":true,\"length\":").append(pth.size());
+		if (pth.size() == 0) return sb.append('}').toString();
+		
+		boolean moves = pth.size() > 1 && pth.uniformStride() == stride;
+		if (moves) {
+			sb.append(",\"start\":[").append(pth.x(0)).append(',').append(pth.y(0)).append("],\"moves\":\"");
+			for (int i = 0; i + 1 < pth.size(); i++) {
+				sb.append((char) ('0' + pth.move(i, stride)));
+			}
+			sb.append('"');
+		}
+		else {
+			sb.append(",\"points\":[");
+			for (int i = 0; i < pth.size(); i++) {
+				if (i > 0) sb.append(',');
+				sb.append(pth.x(i)).append(',').append(pth.y(i));
+			}
+			sb.append(']');
+		}
+		return sb.append('}').toString();
+	}
+	
+	/**
+	 * Encodes a path in the binary form of PathResult.writeTo; no path at all is a length of -1.
+	 */
+	static byte[] encodeBinary(PathResult pth) {
+		if (pth == null) return ByteBuffer.allocate(4).putInt(-1).array();
+		
+		ByteBuffer buf = ByteBuffer.allocate(pth.encodedSize());
+		pth.writeTo(buf);
+		return buf.array();
+	}
+	
+	/**
+	 * @return the string as a JSON string literal, quotes included
+	 */
+	static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"':  sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20 || c == '\u2028' || c == '\u2029') sb.append(String.format("\\u%04x", (int) c));
+					else sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+	
+	private static Map<String, String> parameters(URI uri) {
+		Map<String, String> params = new HashMap<>();
+		String query = uri.getRawQuery();
+		if (query == null) return params;
+		
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) params.put(pair.substring(0, eq), java.net.URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+	
+	private static void reply(HttpExchange ex, int status, byte[] body) throws IOException {
+		ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+		ex.sendResponseHeaders(status, body.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	private static void reply(HttpExchange ex, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().set("Content-Type", body.startsWith("{") || body.startsWith("[") ? "application/json" : "text/plain");
+		ex.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	
+	
+	/*  --------------------------- COMMAND LINE --------------------------------- */
+	
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		long window = 500;
+		int batch = 256;
+		int workers = Runtime.getRuntime().availableProcessors();
+		Map<String, Level> levels = new LinkedHashMap<>();
+		
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "--port":    port = Integer.parseInt(args[++i]); break;
+					case "--window":  window = Long.parseLong(args[++i]); break;
+					case "--batch":   batch = Integer.parseInt(args[++i]); break;
+					case "--workers": workers = Integer.parseInt(args[++i]); break;
+					case "--level": {
+						String[] nv = args[++i].split("=", 2);
+						if (nv.length != 2) usage("--level expects name=FILE");
+						levels.put(nv[0], LevelFile.read(Paths.get(nv[1])));
+						break;
+					}
+					default:
+						usage("unexpected argument " + args[i]);
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			usage("bad option value");
+		}
+		if (levels.isEmpty()) levels.put("default", PathFinderApp.defaultLevel());
+		
+		PathService service = new PathService(port, levels, new QueryBatcher(levels, window, batch, workers));
+		service.start();
+		System.err.println("path service listening on 127.0.0.1:" + service.getPort() + " with levels " + levels.keySet());
+	}
+	
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: java path.service.PathService [--port N] [--level name=FILE]... [--window MICROS] [--batch N] [--workers N]");
+		System.exit(2);
+	}
+
+}
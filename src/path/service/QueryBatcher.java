@@ -0,0 +1,250 @@
+package path.service;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import path.agent.Agents;
+import path.agent.PathAgent;
+import path.agent.PathResult;
+import path.agent.TreeRetention;
+import path.level.Level;
+
+/**
+ * Coalesces path queries that arrive within a short window into batches and solves each batch
+ * in parallel on a fixed pool of worker threads.
+ * <p>
+ * A dispatcher thread waits for the first query, keeps collecting for up to window microseconds
+ * (or until the batch is full) and then hands every query of the batch to the pool as a task of
+ * its own.  It goes straight back to collecting the next batch, so a slow query holds up only the
+ * worker solving it, never the queries queued behind it.  Every worker keeps its own agents, one
+ * per (level, agent name, connectivity), so agents are never shared between threads while the
+ * levels they read are.  Query points are snapped to the level's stride grid, as the GUI does
+ * with mouse clicks.
+ * <p>
+ * After shutdown every query not yet answered completes exceptionally, so no caller waits for an
+ * answer that will never come.
+ */
+public class QueryBatcher {
+	
+	/**
+	 * A query waiting to be solved.
+	 */
+	public static class Query {
+		
+		final String levelName;
+		final String agentName;
+		final boolean allDirection;
+		final Point start;
+		final Point goal;
+		final CompletableFuture<PathResult> answer = new CompletableFuture<>();
+		final long queuedAt = System.nanoTime();
+		
+		public Query(String levelName, String agentName, boolean allDirection, Point start, Point goal) {
+			this.levelName = levelName;
+			this.agentName = agentName;
+			this.allDirection = allDirection;
+			this.start = start;
+			this.goal = goal;
+		}
+	}
+	
+	
+	private final Map<String, Level> levels;
+	
+	private final long windowNanos;
+	
+	private final int maxBatch;
+	
+	private final BlockingQueue<Query> incoming = new LinkedBlockingQueue<>();
+	
+	private final ExecutorService pool;
+	
+	private final Thread dispatcher;
+	
+	private final ThreadLocal<Map<String, PathAgent>> agents = ThreadLocal.withInitial(HashMap::new);
+	
+	private volatile boolean running = true;
+	
+	/*
+	 * Metrics.
+	 */
+	final AtomicLong queries = new AtomicLong();
+	final AtomicLong batches = new AtomicLong();
+	final AtomicLong failures = new AtomicLong();
+	final AtomicLong waitNanos = new AtomicLong();    // queued until picked up by a worker
+	final AtomicLong solveNanos = new AtomicLong();   // inside findPath
+	
+	
+	/**
+	 * @param levels the preloaded levels by name (read only from now on)
+	 * @param windowMicros how long to keep collecting a batch after its first query arrives
+	 * @param maxBatch the most queries in one batch
+	 * @param workers the number of solver threads
+	 */
+	public QueryBatcher(Map<String, Level> levels, long windowMicros, int maxBatch, int workers) {
+		this.levels = levels;
+		this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+		this.maxBatch = Math.max(1, maxBatch);
+		this.pool = Executors.newFixedThreadPool(Math.max(1, workers));
+		this.dispatcher = new Thread(this::dispatch, "path-batcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+	
+	
+	/**
+	 * Queue a query.  The future completes with the path (null if there is none) or
+	 * exceptionally if the query is invalid or the batcher is shut down.
+	 */
+	public CompletableFuture<PathResult> submit(Query q) {
+		if (!levels.containsKey(q.levelName)) {
+			q.answer.completeExceptionally(new IllegalArgumentException("unknown level '" + q.levelName + "'"));
+			return q.answer;
+		}
+		if (!running) {
+			q.answer.completeExceptionally(shutDown());
+			return q.answer;
+		}
+		incoming.add(q);
+		// a shutdown racing with the add may have drained the queue before the query got in
+		if (!running && incoming.remove(q)) q.answer.completeExceptionally(shutDown());
+		return q.answer;
+	}
+	
+	
+	/**
+	 * Stops the dispatcher and the workers.  Queries still queued, or handed to the pool but not
+	 * started, complete exceptionally; those being solved finish normally.
+	 */
+	public void shutdown() {
+		running = false;
+		dispatcher.interrupt();
+		for (Runnable r : pool.shutdownNow()) {
+			if (r instanceof Task) ((Task) r).query.answer.completeExceptionally(shutDown());
+		}
+		List<Query> left = new ArrayList<>();
+		incoming.drainTo(left);
+		fail(left);
+	}
+	
+	
+	private void dispatch() {
+		List<Query> batch = new ArrayList<>(maxBatch);
+		
+		while (running) {
+			try {
+				batch.add(incoming.take());
+				
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < maxBatch) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0) break;
+					Query q = incoming.poll(left, TimeUnit.NANOSECONDS);
+					if (q == null) break;
+					batch.add(q);
+				}
+				incoming.drainTo(batch, maxBatch - batch.size());
+				
+				solve(batch);
+				batch.clear();
+			}
+			catch (InterruptedException e) {
+				fail(batch);   // collected but not handed out yet
+				return;
+			}
+		}
+		fail(batch);
+	}
+	
+	
+	/**
+	 * Hands every query of the batch to the pool as a task of its own, without waiting for any
+	 * of them.
+	 */
+	private void solve(List<Query> batch) {
+		batches.incrementAndGet();
+		queries.addAndGet(batch.size());
+		
+		for (Query q : batch) {
+			try {
+				pool.execute(new Task(q));
+			}
+			catch (RejectedExecutionException e) {
+				q.answer.completeExceptionally(shutDown());   // shut down meanwhile
+			}
+		}
+	}
+	
+	
+	/**
+	 * A query handed to the pool; shutdown recognizes the ones never started.
+	 */
+	private final class Task implements Runnable {
+		
+		final Query query;
+		
+		Task(Query query) {
+			this.query = query;
+		}
+		
+		public void run() {
+			answer(query);
+		}
+	}
+	
+	
+	private static void fail(List<Query> pending) {
+		for (Query q : pending) {
+			q.answer.completeExceptionally(shutDown());
+		}
+	}
+	
+	
+	private static IllegalStateException shutDown() {
+		return new IllegalStateException("the query batcher is shut down");
+	}
+	
+	
+	private void answer(Query q) {
+		long picked = System.nanoTime();
+		waitNanos.addAndGet(picked - q.queuedAt);
+		
+		try {
+			String key = q.levelName + '/' + q.agentName + '/' + q.allDirection;
+			PathAgent agent = agents.get().get(key);
+			if (agent == null) {
+				agent = Agents.create(q.agentName, levels.get(q.levelName));
+				agent.setAllDirection(q.allDirection);
+				agent.setRetention(TreeRetention.NONE);
+				agents.get().put(key, agent);
+			}
+			
+			Level snapshot = levels.get(q.levelName).snapshot();   // one consistent level for the whole search
+			if (agent.getLevel() != snapshot) agent.setLevel(snapshot);
+			
+			agent.clearPath();
+			agent.setStart(snapshot.snap(q.start));
+			agent.setGoal(snapshot.snap(q.goal));
+			agent.findPath();
+			PathResult pth = agent.getPath();   // the agent replaces rather than reuses it, so it can be handed on
+			
+			solveNanos.addAndGet(System.nanoTime() - picked);
+			q.answer.complete(pth);
+		}
+		catch (RuntimeException e) {
+			failures.incrementAndGet();
+			q.answer.completeExceptionally(e);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package path.test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import path.batch.BatchRunner;
+import path.batch.Scenario;
+import path.level.Level;
+import path.level.LevelFile;
+
+/**
+ * Tests of the headless batch runner: level and scenario files are read as documented and
+ * malformed lines are refused with their line number, and a run fails its tolerance check when
+ * a path costs too much or an expected path is not found.
+ */
+class BatchRunnerTests {
+
+	@TempDir
+	Path dir;
+
+
+	private Path write(String name, String... lines) throws IOException {
+		return Files.write(dir.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * A 10 by 5 cell level cut in two by a wall from top to bottom.
+	 */
+	private Level walledLevel() throws IOException {
+		return LevelFile.read(write("walled.level",
+				"# a wall from top to bottom",
+				"size 100 50",
+				"stride 10",
+				"",
+				"zone 40 0 20 50"));
+	}
+
+
+	@Test
+	void test_level_file() throws IOException {
+		Level level = walledLevel();
+
+		assertEquals(10, level.getStride());
+		assertEquals(1, level.obstacles().size());
+		assertFalse(level.isValid(new Point(50, 20)), "the wall is open");
+		assertTrue(level.isValid(new Point(30, 20)));
+	}
+
+
+	@Test
+	void test_malformed_level_lines_are_refused() throws IOException {
+		Path zeroStride = write("zero.level", "size 100 50", "# no way points at all", "stride 0");
+		IOException e = assertThrows(IOException.class, () -> LevelFile.read(zeroStride));
+		assertTrue(e.getMessage().contains(":3:"), "no line number in " + e.getMessage());
+
+		Path shortZone = write("short.level", "zone 40 0 20");
+		assertThrows(IOException.class, () -> LevelFile.read(shortZone));
+
+		Path unknown = write("unknown.level", "size 100 50", "walls 3");
+		e = assertThrows(IOException.class, () -> LevelFile.read(unknown));
+		assertTrue(e.getMessage().contains(":2:"), "no line number in " + e.getMessage());
+	}
+
+
+	@Test
+	void test_scenario_file() throws IOException {
+		List<Scenario> scenarios = Scenario.read(write("queries.scen",
+				"# sx sy gx gy [optimalCost]",
+				"10 20 30 20 20",
+				"",
+				"10,20,30,40"));
+
+		assertEquals(2, scenarios.size());
+		assertEquals(new Point(10, 20), scenarios.get(0).getStart());
+		assertEquals(new Point(30, 20), scenarios.get(0).getGoal());
+		assertEquals(20.0, scenarios.get(0).getExpectedCost());
+		assertEquals(new Point(30, 40), scenarios.get(1).getGoal());
+		assertFalse(scenarios.get(1).hasExpectedCost());
+
+		Path malformed = write("malformed.scen", "10 20 30 20", "10 20 x 20");
+		IOException e = assertThrows(IOException.class, () -> Scenario.read(malformed));
+		assertTrue(e.getMessage().contains(":2:"), "no line number in " + e.getMessage());
+	}
+
+
+	@Test
+	void test_tolerance() throws IOException, InterruptedException {
+		List<Scenario> scenarios = Scenario.read(write("tolerance.scen",
+				"10 20 30 20 20",    // optimal
+				"10 20 30 40 20",    // costs 40, twice the expected cost
+				"10 20 90 40",       // behind the wall, no path expected
+				"10 20 80 20 70"));  // behind the wall, yet a path is expected
+		BatchRunner.Result[] results = new BatchRunner(walledLevel(), "astar", false, 1).run(scenarios);
+
+		assertEquals(4, results.length);
+		assertEquals(40.0, results[1].cost, 1e-9);
+		assertFalse(results[3].found);
+
+		BatchRunner.Summary none = new BatchRunner.Summary(results, -1);
+		assertEquals(2, none.unsolved);
+		assertEquals(1, none.missed);
+		assertEquals(0, none.worse, "paths were checked without a tolerance");
+		assertFalse(none.failed());
+
+		BatchRunner.Summary tight = new BatchRunner.Summary(results, 0.5);
+		assertEquals(1, tight.worse);
+		assertTrue(tight.failed());
+
+		BatchRunner.Summary loose = new BatchRunner.Summary(results, 1.5);
+		assertEquals(0, loose.worse);
+		assertTrue(loose.failed(), "a missing expected path passed the tolerance check");
+
+		BatchRunner.Summary reachable = new BatchRunner.Summary(Arrays.copyOf(results, 3), 1.5);
+		assertFalse(reachable.failed());
+	}
+
+}
@@ -0,0 +1,165 @@
+package path.test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import path.agent.CooperativePlanner;
+import path.level.Grid;
+import path.level.Level;
+import path.level.LevelBuilder;
+
+/**
+ * Tests of the cooperative planner: units reach their goals without ever sharing a way point
+ * in the same tick or swapping places head-on, even when their routes or goals conflict.
+ */
+class CooperativePlannerTests {
+
+	private static final int STRIDE = 10;
+
+	private static final int WINDOW = 8;
+
+	private static final int MAX_TICKS = 200;
+
+
+	/**
+	 * An open 10 by 5 cell level.
+	 */
+	private static Level openLevel() {
+		return Level.builder().size(100, 50).stride(STRIDE).build();
+	}
+
+
+	/**
+	 * A 10 by 3 cell level whose middle row is a corridor, with one passing place above its
+	 * middle cell if asked for.
+	 */
+	private static Level corridorLevel(boolean passingPlace) {
+		LevelBuilder b = Level.builder().size(100, 30).stride(STRIDE).addZone(new Rectangle(0, 20, 100, 10));
+		if (passingPlace) b.addZone(new Rectangle(0, 0, 45, 10)).addZone(new Rectangle(55, 0, 45, 10));
+		else b.addZone(new Rectangle(0, 0, 100, 10));
+		return b.build();
+	}
+
+
+	@Test
+	void test_no_units() {
+		CooperativePlanner planner = new CooperativePlanner(openLevel(), WINDOW);
+
+		planner.plan();
+		planner.advance(WINDOW);
+		assertTrue(planner.allArrived());
+		assertTrue(planner.solve(MAX_TICKS).isEmpty());
+		assertEquals(0, planner.getUnitCount());
+	}
+
+
+	@Test
+	void test_head_on_swap_in_the_open() {
+		Level level = openLevel();
+		CooperativePlanner planner = new CooperativePlanner(level, WINDOW);
+		planner.addUnit(new Point(0, 20), new Point(90, 20));
+		planner.addUnit(new Point(90, 20), new Point(0, 20));
+
+		List<List<Point>> traveled = planner.solve(MAX_TICKS);
+
+		assertTrue(planner.allArrived(), "units did not arrive: " + traveled);
+		checkCollisionFree(level.grid(), traveled);
+	}
+
+
+	@Test
+	void test_head_on_swap_in_a_corridor() {
+		Level level = corridorLevel(true);
+		CooperativePlanner planner = new CooperativePlanner(level, WINDOW);
+		planner.addUnit(new Point(0, 10), new Point(90, 10));
+		planner.addUnit(new Point(90, 10), new Point(0, 10));
+
+		List<List<Point>> traveled = planner.solve(MAX_TICKS);
+
+		assertTrue(planner.allArrived(), "units did not pass each other: " + traveled);
+		checkCollisionFree(level.grid(), traveled);
+	}
+
+
+	@Test
+	void test_head_on_in_a_corridor_too_narrow_to_pass() {
+		Level level = corridorLevel(false);
+		CooperativePlanner planner = new CooperativePlanner(level, WINDOW);
+		planner.addUnit(new Point(0, 10), new Point(90, 10));
+		planner.addUnit(new Point(90, 10), new Point(0, 10));
+
+		List<List<Point>> traveled = planner.solve(MAX_TICKS);
+
+		assertFalse(planner.allArrived());
+		checkCollisionFree(level.grid(), traveled);
+	}
+
+
+	@Test
+	void test_shared_goal() {
+		Level level = openLevel();
+		CooperativePlanner planner = new CooperativePlanner(level, WINDOW);
+		planner.addUnit(new Point(0, 0), new Point(50, 20));
+		planner.addUnit(new Point(90, 40), new Point(50, 20));
+
+		List<List<Point>> traveled = planner.solve(MAX_TICKS);
+
+		assertFalse(planner.allArrived(), "two units cannot both stand on one goal");
+		checkCollisionFree(level.grid(), traveled);
+		Point goal = new Point(50, 20);
+		assertTrue(planner.getPosition(0).equals(goal) || planner.getPosition(1).equals(goal), "neither unit reached the goal");
+	}
+
+
+	@Test
+	void test_goal_on_another_units_start() {
+		Level level = openLevel();
+		CooperativePlanner planner = new CooperativePlanner(level, WINDOW);
+		planner.addUnit(new Point(20, 20), new Point(60, 20));
+		planner.addUnit(new Point(60, 20), new Point(90, 20));
+		planner.addUnit(new Point(90, 20), new Point(20, 20));
+
+		List<List<Point>> traveled = planner.solve(MAX_TICKS);
+
+		assertTrue(planner.allArrived(), "units did not arrive: " + traveled);
+		checkCollisionFree(level.grid(), traveled);
+	}
+
+
+	/**
+	 * Every unit moves to a neighboring way point or waits each tick, no two units share a way
+	 * point in a tick and no two swap places between ticks.
+	 */
+	private static void checkCollisionFree(Grid grid, List<List<Point>> traveled) {
+		int ticks = traveled.get(0).size();
+		for (List<Point> t : traveled) {
+			assertEquals(ticks, t.size(), "units traveled for different numbers of ticks");
+		}
+
+		for (int t = 0; t < ticks; t++) {
+			for (int a = 0; a < traveled.size(); a++) {
+				Point pa = traveled.get(a).get(t);
+				if (t > 0) {
+					Point before = traveled.get(a).get(t - 1);
+					int dx = Math.abs(pa.x - before.x), dy = Math.abs(pa.y - before.y);
+					assertTrue(dx <= grid.stride() && dy <= grid.stride(), "unit " + a + " jumped from " + before + " to " + pa);
+					assertTrue(grid.isOpen(grid.cellOf(pa)), "unit " + a + " entered an obstacle at " + pa);
+				}
+
+				for (int b = a + 1; b < traveled.size(); b++) {
+					Point pb = traveled.get(b).get(t);
+					assertNotEquals(pa, pb, "units " + a + " and " + b + " collide at tick " + t);
+					if (t > 0) {
+						boolean swapped = pa.equals(traveled.get(b).get(t - 1)) && pb.equals(traveled.get(a).get(t - 1));
+						assertFalse(swapped, "units " + a + " and " + b + " swap places at tick " + t);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,399 @@
+package path.test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import path.agent.Action;
+import path.agent.Agents;
+import path.agent.AraStarAgent;
+import path.agent.Neighbors;
+import path.agent.PathAgent;
+import path.agent.RealTimeAgent;
+import path.agent.TreeRetention;
+import path.level.Grid;
+import path.level.Level;
+import path.level.LevelBuilder;
+
+/**
+ * Property based tests of every agent against an exact Dijkstra oracle on random levels of
+ * several sizes and obstacle densities, in both connectivities.  For each query:
+ * <ul>
+ * <li>the agent finds a path exactly when the oracle does (an any-angle agent may also find one
+ * through a gap between way points);</li>
+ * <li>the path runs from the start to the goal and every step is legal: a clear move on the
+ * way point grid, or for the any-angle subgoal agent a clear straight segment;</li>
+ * <li>the path costs no more than the agent promises: the optimum for the optimal agents, a
+ * bounded multiple of it for the weighted ones.</li>
+ * </ul>
+ * The levels come from fixed seeds, so a failure names a level that can be built again.
+ */
+class OracleTests {
+
+	private static final int[][] SIZES = { { 20, 15 }, { 40, 30 }, { 64, 48 } };   // in cells
+
+	private static final double[] DENSITIES = { 0.1, 0.25, 0.4 };   // share of the area covered
+
+	private static final int STRIDE = 10;
+
+	private static final int QUERIES = 12;		// per level and connectivity
+
+	private static final double EPSILON = 1e-6;
+
+
+	/**
+	 * How far above the optimum an agent's paths may cost.
+	 */
+	private enum Promise {
+		OPTIMAL,        // the optimum with diagonals costing sqrt(2) strides
+		INTEGER,        // the optimum with diagonals costing 1.4 strides (see DijkstraAgent)
+		FEWEST_STEPS,   // the fewest moves, which is the optimum only when all moves cost the same
+		BOUNDED,        // at most the agent's weight times the optimum
+		VALID           // no promise beyond a valid path
+	}
+
+
+	@TestFactory
+	List<DynamicTest> test_agents_agree_with_the_oracle() {
+		List<DynamicTest> tests = new ArrayList<>();
+		for (String name : Agents.names()) {
+			tests.add(DynamicTest.dynamicTest(name, () -> checkAgent(name)));
+		}
+		return tests;
+	}
+
+
+	@TestFactory
+	List<DynamicTest> test_nearest_goals_agree_with_the_oracle() {
+		List<DynamicTest> tests = new ArrayList<>();
+		for (String name : Agents.names()) {
+			tests.add(DynamicTest.dynamicTest(name, () -> checkNearest(name)));
+		}
+		return tests;
+	}
+
+
+	@TestFactory
+	List<DynamicTest> test_unreachable_goals_leave_the_goal_alone() {
+		List<DynamicTest> tests = new ArrayList<>();
+		for (String name : Agents.names()) {
+			if (name.equals("realtime")) continue;   // it returns the prefix of a path per call, not a whole path
+			tests.add(DynamicTest.dynamicTest(name, () -> checkUnreachable(name)));
+		}
+		return tests;
+	}
+
+
+	/**
+	 * Asks for the nearest of goals all walled off from the start: there is no path and the
+	 * agent's goal stays what it was.
+	 */
+	private static void checkUnreachable(String name) {
+		Level level = Level.builder().size(100, 50).stride(STRIDE).addZone(new Rectangle(40, 0, 20, 50)).build();
+		for (boolean allDirection : new boolean[] { false, true }) {
+			PathAgent agent = agent(name, level);
+			agent.setAllDirection(allDirection);
+			agent.setStart(new Point(10, 20));
+			agent.setGoal(new Point(10, 40));
+
+			assertNull(agent.findNearest(Arrays.asList(new Point(80, 20), new Point(90, 40))), agent + " found a path through a wall");
+			assertEquals(new Point(10, 40), agent.getGoal(), agent + " changed the goal without reaching one");
+		}
+	}
+
+
+	private static void checkAgent(String name) {
+		long seed = 1;
+		for (int[] size : SIZES) {
+			for (double density : DENSITIES) {
+				Level level = randomLevel(size[0], size[1], density, new Random(seed));
+				for (boolean allDirection : new boolean[] { false, true }) {
+					checkLevel(name, level, allDirection, new Random(seed * 31 + (allDirection ? 1 : 0)),
+							"level " + size[0] + "x" + size[1] + " density " + density + " seed " + seed
+							+ (allDirection ? " 8 connected" : " 4 connected"));
+				}
+				seed++;
+			}
+		}
+	}
+
+
+	private static void checkLevel(String name, Level level, boolean allDirection, Random random, String where) {
+		PathAgent agent = agent(name, level);
+		agent.setAllDirection(allDirection);
+		agent.setRetention(TreeRetention.NONE);
+
+		Grid grid = level.grid();
+		for (int q = 0; q < QUERIES; q++) {
+			Point start = grid.point(randomOpenCell(grid, random));
+			Point goal = grid.point(randomOpenCell(grid, random));
+			String query = agent + " from " + start + " to " + goal + " on " + where;
+
+			boolean anyAngle = name.equals("subgoal");   // moves in any direction whatever the connectivity
+			double[] optimum = oracle(grid, grid.cellOf(start), grid.cellOf(goal), allDirection || anyAngle);
+
+			agent.clearPath();
+			agent.setStart(start);
+			agent.setGoal(goal);
+			List<Point> pth = agent instanceof RealTimeAgent ? ((RealTimeAgent) agent).travel(10_000) : agent.findPath();
+
+			if (optimum == null && !(anyAngle && pth != null)) {
+				// an any-angle path may slip through gaps narrower than the stride, which no grid path can
+				assertNull(pth, query + ": found a path where none exists");
+				continue;
+			}
+			assertNotNull(pth, query + ": found no path where one exists");
+
+			assertEquals(start, pth.get(0), query + ": does not begin at the start");
+			assertEquals(goal, pth.get(pth.size() - 1), query + ": does not end at the goal");
+			for (int i = 0; i + 1 < pth.size(); i++) {
+				Point a = pth.get(i), b = pth.get(i + 1);
+				if (anyAngle) {
+					assertTrue(level.isClear(a, b), query + ": blocked step " + a + " to " + b);
+				}
+				else {
+					assertTrue(isMove(grid, a, b, allDirection), query + ": illegal step " + a + " to " + b);
+				}
+			}
+
+			if (optimum != null) checkPromise(name, pth, optimum, allDirection, query);
+		}
+	}
+
+
+	/**
+	 * Asks for the nearest of several goals: the path must be a valid one to one of them (and the
+	 * agent's goal left alone when none can be reached) and, for the agents promising shortest
+	 * paths, that goal must be the nearest (to within the one
+	 * percent by which diagonals of 1.4 and sqrt(2) strides differ).
+	 */
+	private static void checkNearest(String name) {
+		if (name.equals("realtime")) return;   // it returns the prefix of a path per call, not a whole path
+		long seed = 100;
+		for (double density : DENSITIES) {
+			Level level = randomLevel(SIZES[1][0], SIZES[1][1], density, new Random(seed));
+			Grid grid = level.grid();
+			for (boolean allDirection : new boolean[] { false, true }) {
+				PathAgent agent = agent(name, level);
+				agent.setAllDirection(allDirection);
+				agent.setRetention(TreeRetention.NONE);
+				Random random = new Random(seed * 31 + (allDirection ? 1 : 0));
+
+				for (int q = 0; q < QUERIES; q++) {
+					Point start = grid.point(randomOpenCell(grid, random));
+					List<Point> goals = new ArrayList<>();
+					for (int i = 0; i < 4; i++) goals.add(grid.point(randomOpenCell(grid, random)));
+					String query = agent + " from " + start + " to the nearest of " + goals + " on level seed " + seed
+							+ (allDirection ? " 8 connected" : " 4 connected");
+
+					boolean anyAngle = name.equals("subgoal");
+					double nearest = Double.POSITIVE_INFINITY;
+					for (Point g : goals) {
+						double[] optimum = oracle(grid, grid.cellOf(start), grid.cellOf(g), allDirection || anyAngle);
+						if (optimum != null) nearest = Math.min(nearest, optimum[0]);
+					}
+
+					agent.clearPath();
+					agent.setStart(start);
+					Point before = agent.getGoal();
+					List<Point> pth = agent.findNearest(goals);
+
+					if (Double.isInfinite(nearest) && !(anyAngle && pth != null)) {
+						assertNull(pth, query + ": found a path where none exists");
+						assertEquals(before, agent.getGoal(), query + ": changed the goal without reaching one");
+						continue;
+					}
+					assertNotNull(pth, query + ": found no path where one exists");
+
+					Point reached = pth.get(pth.size() - 1);
+					assertTrue(goals.contains(reached), query + ": ends at " + reached + ", not a goal");
+					assertEquals(reached, agent.getGoal(), query + ": the goal reached is not the agent's goal");
+					assertEquals(start, pth.get(0), query + ": does not begin at the start");
+
+					double[] optimum = oracle(grid, grid.cellOf(start), grid.cellOf(reached), allDirection || anyAngle);
+					if (optimum == null) continue;   // an any-angle path through a gap
+					checkPromise(name, pth, optimum, allDirection, query);
+
+					Promise promise = promise(name, allDirection);
+					if (promise == Promise.OPTIMAL || promise == Promise.INTEGER) {
+						assertTrue(optimum[0] <= nearest * Math.sqrt(2) / 1.4 + EPSILON, query + ": " + reached + " is not the nearest goal");
+					}
+				}
+			}
+			seed++;
+		}
+	}
+
+
+	private static void checkPromise(String name, List<Point> pth, double[] optimum, boolean allDirection, String query) {
+		switch (promise(name, allDirection)) {
+			case OPTIMAL:
+				assertEquals(optimum[0], cost(pth, Math.sqrt(2)), EPSILON, query + ": not a shortest path");
+				break;
+			case INTEGER:
+				assertEquals(optimum[1], cost(pth, 1.4), EPSILON, query + ": not a shortest path in 10/14 costs");
+				break;
+			case FEWEST_STEPS:
+				assertEquals(optimum[2], pth.size() - 1, query + ": not a path of fewest steps");
+				break;
+			case BOUNDED:
+				double weight = name.equals("weighted") ? 2.0 : 3.0;
+				assertTrue(cost(pth, Math.sqrt(2)) <= weight * optimum[0] + EPSILON, query + ": costs more than " + weight + " times the optimum");
+				break;
+			case VALID:
+				break;
+		}
+	}
+
+
+	/**
+	 * What each agent promises about its path cost.
+	 */
+	private static Promise promise(String name, boolean allDirection) {
+		switch (name) {
+			case "astar":
+			case "ghost":      // the straight line when clear, else A*
+				return Promise.OPTIMAL;
+			case "dijkstra":
+			case "flowfield":
+			case "ch":
+				return Promise.INTEGER;
+			case "bfs":
+				return allDirection ? Promise.FEWEST_STEPS : Promise.OPTIMAL;
+			case "weighted":
+			case "arastar":
+				return Promise.BOUNDED;
+			default:           // greedy, realtime, multires, subgoal, adaptive
+				return Promise.VALID;
+		}
+	}
+
+
+	private static PathAgent agent(String name, Level level) {
+		if (name.equals("arastar")) {
+			return new AraStarAgent(level, 3.0, 0.5, 1_000_000);   // time enough to never be cut short
+		}
+		return Agents.create(name, level);
+	}
+
+
+
+	/*  --------------------------- ORACLE --------------------------------- */
+
+	/**
+	 * Plain Dijkstra on the grid's move masks, kept independent of the agents under test.
+	 *
+	 * @return the cost of a shortest path from one cell to another with diagonals costing
+	 * sqrt(2) strides, with diagonals costing 1.4 strides, and its fewest steps; or null if
+	 * there is no path
+	 */
+	private static double[] oracle(Grid grid, int from, int to, boolean allDirection) {
+		double sqrt2 = distance(grid, from, to, allDirection, Math.sqrt(2));
+		if (Double.isInfinite(sqrt2)) return null;
+		return new double[] { sqrt2, distance(grid, from, to, allDirection, 1.4), distance(grid, from, to, allDirection, 1.0) / grid.stride() };
+	}
+
+
+	private static double distance(Grid grid, int from, int to, boolean allDirection, double diagonal) {
+		double[] dist = new double[grid.size()];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+		dist[from] = 0.0;
+		open.add(new double[] { 0.0, from });
+		while (!open.isEmpty()) {
+			double[] top = open.poll();
+			int c = (int) top[1];
+			if (top[0] > dist[c]) continue;
+			if (c == to) return dist[c] * grid.stride();
+
+			for (int m = Neighbors.moves(grid, c, allDirection); m != 0; m &= m - 1) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int n = grid.neighbor(c, d);
+				double dn = dist[c] + (Action.of(d).isDiagonal() ? diagonal : 1.0);
+				if (dn < dist[n] - EPSILON) {
+					dist[n] = dn;
+					open.add(new double[] { dn, n });
+				}
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+
+	/**
+	 * @return the cost of a path with diagonal steps costing the given multiple of the stride
+	 * (any other step costs its length)
+	 */
+	private static double cost(List<Point> pth, double diagonal) {
+		double cost = 0.0;
+		for (int i = 0; i + 1 < pth.size(); i++) {
+			Point a = pth.get(i), b = pth.get(i + 1);
+			boolean diagonalStep = Math.abs(a.x - b.x) == STRIDE && Math.abs(a.y - b.y) == STRIDE;
+			cost += diagonalStep ? diagonal * STRIDE : a.distance(b);
+		}
+		return cost;
+	}
+
+
+	/**
+	 * @return true if b is one clear move from a on the grid
+	 */
+	private static boolean isMove(Grid grid, Point a, Point b, boolean allDirection) {
+		int c = grid.cellOf(a);
+		if (c < 0 || grid.x(c) != a.x || grid.y(c) != a.y) return false;
+		if (Math.abs(b.x - a.x) > STRIDE || Math.abs(b.y - a.y) > STRIDE || (b.x % STRIDE) != 0 || (b.y % STRIDE) != 0) return false;
+
+		int d = Neighbors.direction(Integer.signum(b.x - a.x), Integer.signum(b.y - a.y));
+		return d >= 0 && (Neighbors.moves(grid, c, allDirection) & (1 << d)) != 0;
+	}
+
+
+
+	/*  --------------------------- RANDOM LEVELS --------------------------------- */
+
+	/**
+	 * Drops random rectangles until they cover about the given share of a level of cols by
+	 * rows cells.  Each rectangle's edges lie halfway between way points.
+	 */
+	private static Level randomLevel(int cols, int rows, double density, Random random) {
+		int width = cols * STRIDE, height = rows * STRIDE;
+		boolean[][] covered = new boolean[cols][rows];
+		int coveredCells = 0;
+
+		List<Rectangle> zones = new ArrayList<>();
+		while (coveredCells < density * cols * rows) {
+			int w = 1 + random.nextInt(Math.max(1, cols / 4));
+			int h = 1 + random.nextInt(Math.max(1, rows / 4));
+			int c = random.nextInt(cols - w + 1), r = random.nextInt(rows - h + 1);
+			zones.add(new Rectangle(c * STRIDE - STRIDE / 2, r * STRIDE - STRIDE / 2, w * STRIDE, h * STRIDE));
+			for (int i = c; i < c + w; i++) {
+				for (int j = r; j < r + h; j++) {
+					if (!covered[i][j]) coveredCells++;
+					covered[i][j] = true;
+				}
+			}
+		}
+
+		LevelBuilder builder = Level.builder().size(width, height).stride(STRIDE);
+		for (Rectangle z : zones) builder.addZone(z);
+		return builder.build();
+	}
+
+
+	private static int randomOpenCell(Grid grid, Random random) {
+		while (true) {
+			int c = random.nextInt(grid.size());
+			if (grid.isOpen(c)) return c;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package path.test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Point;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import path.agent.PathResult;
+
+/**
+ * Tests of PathResult serialization: every path reads back as written, in both encoded
+ * forms, and malformed bytes are refused before anything is allocated for them.
+ */
+class PathResultTests {
+
+	/**
+	 * Writes the path, checks it took exactly encodedSize() bytes and reads it back.
+	 */
+	private static PathResult roundTrip(PathResult pth) {
+		ByteBuffer buf = ByteBuffer.allocate(pth.encodedSize() + 3);
+		buf.put((byte) 7);   // not at the start of the buffer
+		pth.writeTo(buf);
+		assertEquals(1 + pth.encodedSize(), buf.position(), "encodedSize() is not the bytes written");
+		buf.put((byte) 8).put((byte) 9);
+
+		buf.flip();
+		assertEquals(7, buf.get());
+		PathResult back = PathResult.readFrom(buf);
+		assertEquals(8, buf.get(), "readFrom did not stop just after the path");
+		return back;
+	}
+
+
+	@Test
+	void test_round_trip_of_moves() {
+		PathResult pth = PathResult.ofCoordinates(new int[] { 30, 30, 40, 30, 50, 40, 50, 50, 40, 60, 30, 60, 30, 50 });
+		assertEquals(10, pth.uniformStride());
+
+		PathResult back = roundTrip(pth);
+		assertEquals(pth, back);
+		assertArrayEquals(pth.coordinates(), back.coordinates());
+		assertEquals(pth.cost(), back.cost(), 1e-9);
+	}
+
+
+	@Test
+	void test_round_trip_of_points() {
+		PathResult pth = PathResult.of(Arrays.asList(new Point(-5, 7), new Point(123, 456), new Point(Integer.MAX_VALUE, Integer.MIN_VALUE)));
+		assertEquals(0, pth.uniformStride());
+
+		PathResult back = roundTrip(pth);
+		assertArrayEquals(pth.coordinates(), back.coordinates());
+	}
+
+
+	@Test
+	void test_round_trip_of_short_paths() {
+		assertEquals(0, roundTrip(PathResult.ofCoordinates(new int[0])).size());
+		assertEquals(Arrays.asList(new Point(10, 20)), roundTrip(PathResult.ofCoordinates(new int[] { 10, 20 })));
+	}
+
+
+	@Test
+	void test_round_trip_of_a_prefix() {
+		PathResult pth = PathResult.ofCoordinates(new int[] { 0, 0, 10, 0, 20, 0, 30, 0 }).prefix(2);
+		assertArrayEquals(new int[] { 0, 0, 10, 0, 20, 0 }, roundTrip(pth).coordinates());
+	}
+
+
+	@Test
+	void test_truncated_paths_underflow() {
+		PathResult pth = PathResult.ofCoordinates(new int[] { 0, 0, 10, 0, 20, 10, 25, 13 });
+		ByteBuffer full = ByteBuffer.allocate(pth.encodedSize());
+		pth.writeTo(full);
+
+		for (int size = 0; size < full.capacity(); size++) {
+			ByteBuffer cut = ByteBuffer.wrap(Arrays.copyOf(full.array(), size));
+			assertThrows(BufferUnderflowException.class, () -> PathResult.readFrom(cut), "cut to " + size + " bytes");
+		}
+	}
+
+
+	@Test
+	void test_hostile_lengths_are_refused() {
+		// a huge length and a short buffer: refused before 2 * n ints are allocated
+		ByteBuffer claimsMany = ByteBuffer.allocate(13).putInt(PathResult.MAX_LENGTH).putInt(0).putInt(0).put((byte) 0);
+		claimsMany.flip();
+		assertThrows(BufferUnderflowException.class, () -> PathResult.readFrom(claimsMany));
+
+		ByteBuffer tooMany = ByteBuffer.allocate(4).putInt(PathResult.MAX_LENGTH + 1);
+		tooMany.flip();
+		assertThrows(IllegalArgumentException.class, () -> PathResult.readFrom(tooMany));
+
+		ByteBuffer overflows = ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE);
+		overflows.flip();
+		assertThrows(IllegalArgumentException.class, () -> PathResult.readFrom(overflows));
+
+		ByteBuffer negative = ByteBuffer.allocate(4).putInt(-1);
+		negative.flip();
+		assertThrows(IllegalArgumentException.class, () -> PathResult.readFrom(negative));
+	}
+
+
+	@Test
+	void test_bad_forms_and_moves_are_refused() {
+		ByteBuffer badForm = ByteBuffer.allocate(32).putInt(2).putInt(0).putInt(0).put((byte) 9).putInt(1).putInt(1);
+		badForm.flip();
+		assertThrows(IllegalArgumentException.class, () -> PathResult.readFrom(badForm));
+
+		ByteBuffer badMove = ByteBuffer.allocate(32).putInt(2).putInt(0).putInt(0).put((byte) 1).putInt(10).put((byte) 8);
+		badMove.flip();
+		assertThrows(IllegalArgumentException.class, () -> PathResult.readFrom(badMove));
+	}
+
+}
@@ -0,0 +1,174 @@
+package path.test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import path.agent.Agents;
+import path.agent.AraStarAgent;
+import path.agent.PathAgent;
+import path.agent.TreeRetention;
+import path.level.Level;
+
+/**
+ * Allocation and throughput regression tests.  Every agent solves the same fixed queries on a
+ * fixed level, in both connectivities; the bytes its thread allocates per findPath (read from
+ * ThreadMXBean.getThreadAllocatedBytes) and the nodes it expands per second must stay within the
+ * budgets stored below.
+ * <p>
+ * The budgets are about twice the allocation and a tenth of the throughput measured when they
+ * were set, so they catch a change that allocates per node again (or slows the search by an
+ * order of magnitude) without tripping over a busy machine.  Lower a budget when an agent gets
+ * better; raise one only with a reason.
+ */
+class PerformanceTests {
+
+	/*
+	 * agent, most bytes allocated per findPath, fewest nodes expanded per second
+	 */
+	private static final Object[][] BUDGETS = {
+		{ "ghost",        400_000,  10_000 },
+		{ "bfs",        1_200_000,  35_000 },
+		{ "astar",        400_000,  10_000 },
+		{ "weighted",     200_000,   6_000 },
+		{ "arastar",      250_000,  20_000 },
+		{ "greedy",       100_000,   6_000 },
+		{ "dijkstra",       2_000, 120_000 },
+		{ "flowfield",     20_000, 700_000 },
+		{ "realtime",       1_000,  40_000 },
+		{ "multires",       2_000,  40_000 },
+		{ "subgoal",        5_000,   4_000 },
+		{ "ch",             5_000,  90_000 },
+		{ "adaptive",     250_000,  15_000 },
+	};
+
+	private static final int WARMUP_ROUNDS = 20;	// let the JIT compile the search first
+
+	private static final int ROUNDS = 50;		// rounds of all queries per measurement
+
+	private static final int TRIES = 3;		// measurements per agent; the best counts
+
+	private static final Point[][] QUERIES = {
+		{ new Point(30, 30), new Point(370, 270) },
+		{ new Point(30, 270), new Point(370, 30) },
+		{ new Point(150, 150), new Point(250, 50) },
+		{ new Point(50, 150), new Point(350, 150) },
+	};
+
+	private static com.sun.management.ThreadMXBean threads;
+
+
+	@BeforeAll
+	static void enableAllocationCounting() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+				"this JVM cannot count allocated bytes per thread");
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported(), "this JVM cannot count allocated bytes per thread");
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+
+	/**
+	 * A 40 by 30 cell level with two walls to go around and a block in the open.
+	 */
+	private static Level level() {
+		return Level.builder().size(400, 300).stride(10)
+				.addZone(new Rectangle(100, 0, 20, 200))
+				.addZone(new Rectangle(200, 100, 20, 200))
+				.addZone(new Rectangle(280, 40, 80, 30))
+				.build();
+	}
+
+
+	@Test
+	void test_every_agent_has_a_budget() {
+		assertEquals(new HashSet<>(Agents.names()), budgets().keySet(),
+				"add a budget for each new agent (and drop the budget of a removed one)");
+	}
+
+
+	@TestFactory
+	List<DynamicTest> test_agents_stay_within_budget() {
+		List<DynamicTest> tests = new ArrayList<>();
+		for (String name : Agents.names()) {
+			for (boolean allDirection : new boolean[] { false, true }) {
+				tests.add(DynamicTest.dynamicTest(name + (allDirection ? " 8 connected" : " 4 connected"),
+						() -> checkBudget(name, allDirection)));
+			}
+		}
+		return tests;
+	}
+
+
+	private static void checkBudget(String name, boolean allDirection) {
+		Object[] budget = budgets().get(name);
+		assertNotNull(budget, "no budget for " + name);
+		long maxBytes = ((Integer) budget[1]).longValue();
+		long minNodesPerSecond = ((Integer) budget[2]).longValue();
+
+		PathAgent agent = name.equals("arastar")
+				? new AraStarAgent(level(), 3.0, 0.5, 100_000)   // as the GUI does, so its time limit never cuts a search short
+				: Agents.create(name, level());
+		agent.setAllDirection(allDirection);
+		agent.setRetention(TreeRetention.NONE);   // measure the search, not the tree it leaves behind
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) solveAll(agent);
+
+		long bestBytes = Long.MAX_VALUE;
+		double bestRate = 0.0;
+		long thread = Thread.currentThread().getId();
+		for (int t = 0; t < TRIES; t++) {
+			long bytes0 = threads.getThreadAllocatedBytes(thread);
+			long nanos0 = System.nanoTime();
+
+			long expansions = 0;
+			for (int i = 0; i < ROUNDS; i++) expansions += solveAll(agent);
+
+			long nanos = System.nanoTime() - nanos0;
+			long bytes = threads.getThreadAllocatedBytes(thread) - bytes0;
+
+			bestBytes = Math.min(bestBytes, bytes / (ROUNDS * QUERIES.length));
+			bestRate = Math.max(bestRate, expansions * 1e9 / nanos);
+		}
+
+		assertTrue(bestBytes <= maxBytes, name + " allocated " + bestBytes + " bytes per findPath, budget " + maxBytes);
+		assertTrue(bestRate >= minNodesPerSecond,
+				name + " expanded " + Math.round(bestRate) + " nodes per second, budget " + minNodesPerSecond);
+	}
+
+
+	/**
+	 * @return the number of nodes expanded solving every query once
+	 */
+	private static long solveAll(PathAgent agent) {
+		long expansions = 0;
+		for (Point[] q : QUERIES) {
+			agent.clearPath();
+			agent.setStart(q[0]);
+			agent.setGoal(q[1]);
+			assertNotNull(agent.findPath(), agent + " found no path from " + q[0] + " to " + q[1]);
+			expansions += agent.getSearchStats().expansions();
+		}
+		return expansions;
+	}
+
+
+	private static Map<String, Object[]> budgets() {
+		Map<String, Object[]> map = new HashMap<>();
+		for (Object[] b : BUDGETS) map.put((String) b[0], b);
+		return map;
+	}
+
+}